@@ -0,0 +1,85 @@
+package com.us3rn1me.noVPN;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link AsnDatabase} login check against an iptoasn-style TSV
+ * of 100k to 1M contiguous IPv4 ranges spread over 50k ASNs and 200
+ * countries, with 1,000 ASNs and 10 countries blocked. The setup prints how
+ * long the file took to load and the footprint of the tables.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsnLookupBenchmark {
+
+    private static final int POOL = 4096;
+
+    @Param({ "100000", "500000", "1000000" })
+    public int ranges;
+
+    private AsnDatabase database;
+    private int[] addresses;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        Path file = Files.createTempFile("novpn-asn", ".tsv");
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            long step = (1L << 32) / ranges;
+            for (int i = 0; i < ranges; i++) {
+                int first = (int) (i * step);
+                int last = (int) (i * step + step - 1);
+                String country = "" + (char) ('A' + random.nextInt(20)) + (char) ('A' + random.nextInt(10));
+                out.write(IpAddresses.formatIpv4(first) + "\t" + IpAddresses.formatIpv4(last) + "\t"
+                        + (1 + random.nextInt(50_000)) + "\t" + country + "\tEXAMPLE-AS\n");
+            }
+        }
+
+        List<String> asns = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            asns.add("AS" + (1 + random.nextInt(50_000)));
+        }
+        long begin = System.nanoTime();
+        database = AsnDatabase.load(List.of(file))
+                .withBlocked(asns, List.of("AA", "BB", "CC", "DD", "EE", "FF", "GG", "HH", "II", "JJ"));
+        System.out.println("# loaded " + database.rangeCount() + " ranges in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms, "
+                + database.blockedRangeCount() + " blocked, footprint "
+                + Units.formatBytes(database.footprintBytes()));
+        Files.delete(file);
+
+        addresses = new int[POOL];
+        for (int i = 0; i < POOL; i++) {
+            addresses[i] = random.nextInt();
+        }
+    }
+
+    @Benchmark
+    public boolean isBlocked() {
+        return database.isBlocked(addresses[next++ & (POOL - 1)]);
+    }
+}
@@ -0,0 +1,88 @@
+package com.us3rn1me.noVPN;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * The line/regex parser that {@link ListParser} replaced, kept as the
+ * baseline for {@link ParserBenchmark}. Behaviour matches the old
+ * {@code IpListManager.parseLine}.
+ */
+final class LegacyListParser {
+
+    // Matches a plain IPv4 address, optionally followed by :port
+    private static final Pattern IP_PATTERN = Pattern.compile("^(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})(:\\d+)?$");
+
+    // Matches IPv4 CIDR notation
+    private static final Pattern CIDR_PATTERN = Pattern
+            .compile("^(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})/(\\d{1,2})$");
+
+    // Matches an IPv6 address or CIDR, optionally bracketed with a :port
+    private static final Pattern IPV6_PATTERN = Pattern
+            .compile("^\\[?([0-9A-Fa-f]*:[0-9A-Fa-f:.]*)(?:\\](?::\\d+)?)?(?:/(\\d{1,3}))?$");
+
+    // Matches an IP inside JSON (from monosans/proxy-list JSON format)
+    private static final Pattern JSON_IP_PATTERN = Pattern.compile("\"(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})\"");
+
+    private LegacyListParser() {
+    }
+
+    static void parse(InputStream in, LookupIndex.Segment.Builder segment) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                parseLine(line.trim(), segment);
+            }
+        }
+    }
+
+    private static void parseLine(String line, LookupIndex.Segment.Builder segment) {
+        if (line.isEmpty() || line.startsWith("#") || line.startsWith(";"))
+            return;
+
+        if (line.startsWith("{") || line.startsWith("[")) {
+            var matcher = JSON_IP_PATTERN.matcher(line);
+            while (matcher.find()) {
+                addIp(segment, line, matcher.start(1), matcher.end(1));
+            }
+            return;
+        }
+
+        if (CIDR_PATTERN.matcher(line).matches()) {
+            InetAddressRange range = InetAddressRange.parse(line);
+            if (range != null)
+                segment.addRange(range);
+            return;
+        }
+
+        var matcher = IP_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            addIp(segment, line, matcher.start(1), matcher.end(1));
+            return;
+        }
+
+        matcher = IPV6_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            if (matcher.group(2) != null) {
+                InetAddressRange range = InetAddressRange.parse(matcher.group(1) + "/" + matcher.group(2));
+                if (range != null)
+                    segment.addRange(range);
+                return;
+            }
+
+            long[] address = new long[2];
+            if (IpAddresses.parseIpv6(line, matcher.start(1), matcher.end(1), address))
+                segment.addIpv6(address[0], address[1]);
+        }
+    }
+
+    private static void addIp(LookupIndex.Segment.Builder segment, String line, int start, int end) {
+        long ip = IpAddresses.parseIpv4(line, start, end);
+        if (ip >= 0)
+            segment.addIpv4((int) ip);
+    }
+}
@@ -0,0 +1,135 @@
+package com.us3rn1me.noVPN;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Measures the login-path lookup for listed (hit) and unlisted (miss)
+ * addresses against snapshots from 10k to 2M exact IPs and 1k to 100k CIDRs,
+ * spread over 30 sources like the default list set, with either snapshot
+ * engine. The setup prints the footprint of both engines for the same data.
+ *
+ * Run with the {@code gc} profiler: {@code gc.alloc.rate.norm} should read
+ * 0 B/op for the {@code InetAddress} and {@code int} paths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    private static final int SOURCES = 30;
+    private static final int POOL = 4096;
+
+    @Param({ "10000", "200000", "2000000" })
+    public int ips;
+
+    @Param({ "1000", "10000", "100000" })
+    public int cidrs;
+
+    @Param({ "index", "bitmap" })
+    public String engine;
+
+    private IpListManager manager;
+    private InetAddress[] hits;
+    private InetAddress[] misses;
+    private int[] packedMisses;
+    private String[] stringMisses;
+    private int next;
+
+    @Setup
+    public void setUp() throws UnknownHostException {
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>();
+        List<LookupIndex.Segment> segments = new ArrayList<>();
+        int[] listed = new int[POOL];
+        for (int s = 0; s < SOURCES; s++) {
+            names.add("source-" + s);
+            LookupIndex.Segment.Builder segment = new LookupIndex.Segment.Builder();
+            for (int i = s; i < ips; i += SOURCES) {
+                int ip = random.nextInt();
+                segment.addIpv4(ip);
+                listed[i & (POOL - 1)] = ip;
+            }
+            for (int i = s; i < cidrs; i += SOURCES) {
+                segment.addIpv4Range(random.nextInt(), 20 + random.nextInt(13));
+            }
+            segments.add(segment.build(s));
+        }
+
+        LookupIndex index = LookupIndex.build(names, segments);
+        manager = new IpListManager(Logger.getLogger("NoVPN"), HttpClient.newHttpClient(), null);
+        manager.install(index);
+        manager.reconfigure(new Config("", "novpn.bypass", false, 0, 10, 8, 60, List.of(), 1,
+                Config.StartupPolicy.ALLOW, 0, "", Map.of(), "127.0.0.1", 0,
+                Config.SnapshotEngine.parse(engine), false, List.of(), 0,
+                Config.SnapshotMode.STANDALONE, "", false, false, 0,
+                "", "", 0, 0, 0, 0, List.of(), List.of(), List.of(), "")).join();
+        System.out.println("# footprint: index " + Units.formatBytes(index.footprintBytes())
+                + ", bitmap " + Units.formatBytes(index.toBitmap(1).footprintBytes()));
+
+        hits = new InetAddress[POOL];
+        misses = new InetAddress[POOL];
+        packedMisses = new int[POOL];
+        stringMisses = new String[POOL];
+        for (int i = 0; i < POOL; i++) {
+            hits[i] = InetAddress.getByName(IpAddresses.formatIpv4(listed[i]));
+
+            int ip;
+            do {
+                ip = random.nextInt();
+            } while (index.match(ip) != LookupIndex.NO_MATCH);
+            packedMisses[i] = ip;
+            stringMisses[i] = IpAddresses.formatIpv4(ip);
+            misses[i] = InetAddress.getByName(stringMisses[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public boolean hitInetAddress() {
+        return manager.isBlocked(hits[next++ & (POOL - 1)]);
+    }
+
+    @Benchmark
+    public boolean missInetAddress() {
+        return manager.isBlocked(misses[next++ & (POOL - 1)]);
+    }
+
+    @Benchmark
+    public boolean missInt() {
+        return manager.isBlocked(packedMisses[next++ & (POOL - 1)]);
+    }
+
+    /** The string path the listeners used before, for comparison. */
+    @Benchmark
+    public boolean missString() {
+        return manager.isBlocked(stringMisses[next++ & (POOL - 1)]);
+    }
+}
@@ -0,0 +1,101 @@
+package com.us3rn1me.noVPN;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link ListParser} with the old regex parser on
+ * synthetic lists shaped like the real sources, in every format the parser
+ * accepts. Besides whole lists per second, the {@code megabytes} counter
+ * reports parser throughput in MB/s.
+ *
+ * Run with {@code ./gradlew jmh}; the {@code gc} profiler configured in
+ * build.gradle shows allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    /**
+     * {@code plain}: one address per line (blocklist.de),
+     * {@code port}: {@code ip:port} proxy lists (TheSpeedX),
+     * {@code cidr}: netsets with comments (firehol),
+     * {@code ipv6}: IPv6 addresses and prefixes,
+     * {@code json}: one object per line with a {@code "host"} field (monosans).
+     */
+    @Param({ "plain", "port", "cidr", "ipv6", "json" })
+    public String shape;
+
+    @Param({ "200000" })
+    public int lines;
+
+    private byte[] data;
+
+    /** Bytes parsed, normalized by JMH into MB/s. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public double megabytes;
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder out = new StringBuilder(lines * 24);
+        for (int i = 0; i < lines; i++) {
+            String ip = random.nextInt(224) + "." + random.nextInt(256) + "."
+                    + random.nextInt(256) + "." + random.nextInt(256);
+            switch (shape) {
+                case "plain" -> out.append(ip);
+                case "port" -> out.append(ip).append(':').append(1024 + random.nextInt(60000));
+                case "cidr" -> out.append(i % 20 == 0 ? "# comment " + i : ip + "/" + (8 + random.nextInt(25)));
+                case "ipv6" -> {
+                    String v6 = "2001:db8:" + Integer.toHexString(random.nextInt(0x10000)) + ":"
+                            + Integer.toHexString(random.nextInt(0x10000)) + "::" + Integer.toHexString(i & 0xFFFF);
+                    out.append(i % 2 == 0 ? v6 : v6 + "/" + (32 + random.nextInt(33)));
+                }
+                default -> out.append("{\"host\":\"").append(ip).append("\",\"port\":")
+                        .append(1024 + random.nextInt(60000)).append(",\"protocol\":\"socks5\"}");
+            }
+            out.append('\n');
+        }
+        data = out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public LookupIndex.Segment.Builder streaming(Throughput throughput) throws IOException {
+        LookupIndex.Segment.Builder segment = new LookupIndex.Segment.Builder();
+        ListParser.parse(new ByteArrayInputStream(data), segment);
+        throughput.megabytes += data.length / 1e6;
+        return segment;
+    }
+
+    @Benchmark
+    public LookupIndex.Segment.Builder regex(Throughput throughput) throws IOException {
+        LookupIndex.Segment.Builder segment = new LookupIndex.Segment.Builder();
+        LegacyListParser.parse(new ByteArrayInputStream(data), segment);
+        throughput.megabytes += data.length / 1e6;
+        return segment;
+    }
+}
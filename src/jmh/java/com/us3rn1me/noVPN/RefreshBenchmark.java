@@ -0,0 +1,145 @@
+package com.us3rn1me.noVPN;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Measures a full {@link IpListManager#refresh} — download, parse, merge and
+ * publish — against a local HTTP server standing in for the real sources,
+ * so the numbers do not depend on the network.
+ *
+ * {@code conditional} makes the server answer revalidations with 304, which
+ * measures the "nothing changed" path instead of a full rebuild;
+ * {@code mapped} adds writing and mapping the snapshot file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RefreshBenchmark {
+
+    @Param({ "30" })
+    public int sources;
+
+    @Param({ "20000" })
+    public int linesPerSource;
+
+    @Param({ "false", "true" })
+    public boolean conditional;
+
+    @Param({ "false", "true" })
+    public boolean mapped;
+
+    private HttpServer server;
+    private Path dataDirectory;
+    private IpListManager manager;
+    private Config config;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        List<byte[]> bodies = new ArrayList<>();
+        for (int s = 0; s < sources; s++) {
+            StringBuilder out = new StringBuilder(linesPerSource * 16);
+            for (int i = 0; i < linesPerSource; i++) {
+                out.append(IpAddresses.formatIpv4(random.nextInt()));
+                if (i % 50 == 0) {
+                    out.append('/').append(16 + random.nextInt(17));
+                }
+                out.append('\n');
+            }
+            bodies.add(out.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> serve(exchange, bodies));
+        server.start();
+
+        List<String> urls = new ArrayList<>();
+        for (int s = 0; s < sources; s++) {
+            urls.add("http://127.0.0.1:" + server.getAddress().getPort() + "/" + s + ".txt");
+        }
+
+        Logger logger = Logger.getLogger("NoVPN.bench");
+        logger.setLevel(Level.WARNING);
+        dataDirectory = mapped ? Files.createTempDirectory("novpn-bench") : null;
+        manager = new IpListManager(logger, HttpClient.newHttpClient(), dataDirectory);
+        config = new Config("", "novpn.bypass", false, 30, 10, 8, 60, urls, 1,
+                Config.StartupPolicy.ALLOW, 0, "", Map.of(), "127.0.0.1", 0, Config.SnapshotEngine.INDEX, false,
+                List.of(), 300, Config.SnapshotMode.STANDALONE, "", false, false, 0,
+                "", "", 0, 0, 0, 0, List.of(), List.of(), List.of(), "");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        manager.shutdown();
+        server.stop(0);
+        if (dataDirectory != null) {
+            try (Stream<Path> files = Files.walk(dataDirectory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int refresh() {
+        manager.refresh(config);
+        return manager.getIpCount();
+    }
+
+    private void serve(HttpExchange exchange, List<byte[]> bodies) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        int source = Integer.parseInt(path.substring(1, path.indexOf('.')));
+        String etag = "\"" + source + "\"";
+        try (exchange) {
+            if (conditional && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] body = bodies.get(source);
+            if (conditional) {
+                exchange.getResponseHeaders().set("ETag", etag);
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.us3rn1me.noVPN;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The trusted addresses and players of one loaded {@link Config}, parsed
+ * once.
+ *
+ * Allowlisted logins are let through before the lists are consulted and
+ * before any permission lookup. Player UUIDs are held in a hash set; IPv4
+ * entries are merged into an {@link Ipv4RangeSet}, so a check is a hash probe
+ * and a binary search over a handful of ranges. IPv6 entries are few and are
+ * matched exactly, not widened to /64 like the block lists; returning IPv6
+ * players are packed through an {@link Ipv6AddressCache}, so a check does not
+ * allocate.
+ */
+public final class Allowlist {
+
+    private static final Allowlist EMPTY = new Allowlist(Ipv4RangeSet.empty(), List.of(), Set.of(), List.of());
+
+    private final Ipv4RangeSet ipv4;
+    private final List<InetAddressRange> ipv6;
+    private final Set<UUID> players;
+    private final List<String> rejected;
+    private final Ipv6AddressCache ipv6Addresses = new Ipv6AddressCache();
+
+    private Allowlist(Ipv4RangeSet ipv4, List<InetAddressRange> ipv6, Set<UUID> players, List<String> rejected) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+        this.players = players;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Parses the {@code allowlist} of {@code config}. Each entry is a player
+     * UUID, an IP address or a CIDR block; anything else is collected in
+     * {@link #getRejected()}.
+     */
+    public static Allowlist compile(Config config) {
+        if (config.getAllowlist().isEmpty())
+            return EMPTY;
+
+        Ipv4RangeSet.Builder ipv4 = new Ipv4RangeSet.Builder();
+        List<InetAddressRange> ipv6 = new ArrayList<>();
+        Set<UUID> players = new HashSet<>();
+        List<String> rejected = new ArrayList<>();
+        for (String raw : config.getAllowlist()) {
+            String entry = raw.trim();
+            if (entry.length() == 36 && entry.charAt(8) == '-') {
+                try {
+                    players.add(UUID.fromString(entry));
+                    continue;
+                } catch (IllegalArgumentException e) {
+                    // Not a UUID after all; try it as an address.
+                }
+            }
+
+            String cidr = entry.indexOf('/') >= 0 ? entry : entry + (entry.indexOf(':') >= 0 ? "/128" : "/32");
+            InetAddressRange range = InetAddressRange.parse(cidr);
+            if (range == null) {
+                rejected.add(raw);
+            } else if (range.isIpv6()) {
+                ipv6.add(range);
+            } else {
+                ipv4.add(range);
+            }
+        }
+        return new Allowlist(ipv4.build(), List.copyOf(ipv6), Set.copyOf(players), List.copyOf(rejected));
+    }
+
+    /** Returns whether the player with this UUID is allowlisted. */
+    public boolean contains(UUID player) {
+        return !players.isEmpty() && players.contains(player);
+    }
+
+    /** Returns whether {@code address} falls within an allowlisted block. */
+    public boolean contains(InetAddress address) {
+        if (address instanceof Inet4Address ipv4Address)
+            return ipv4.contains(IpAddresses.packIpv4(ipv4Address));
+        if (ipv6.isEmpty() && ipv4.size() == 0)
+            return false;
+
+        Ipv6AddressCache.Entry packed = ipv6Addresses.get(address);
+        return contains(packed.high(), packed.low());
+    }
+
+    /**
+     * Returns whether the packed IPv6 address falls within an allowlisted
+     * block. IPv4-mapped addresses are checked against the IPv4 entries.
+     */
+    public boolean contains(long high, long low) {
+        if (IpAddresses.isIpv4Mapped(high, low))
+            return ipv4.contains((int) low);
+
+        for (InetAddressRange range : ipv6) {
+            if (range.contains(high, low))
+                return true;
+        }
+        return false;
+    }
+
+    /** Returns whether either the player or their address is allowlisted. */
+    public boolean contains(UUID player, InetAddress address) {
+        return contains(player) || contains(address);
+    }
+
+    /** Returns the entries that are neither a UUID nor an address, in config order. */
+    public List<String> getRejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,474 @@
+package com.us3rn1me.noVPN;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An offline IP-to-network database, used to block whole ASNs and countries.
+ *
+ * Reads iptoasn.com TSV files ({@code ip2asn-v4.tsv}, {@code ip2asn-combined.tsv},
+ * optionally gzipped) and MaxMind GeoLite2 ASN block CSVs. The ranges are
+ * held sorted and non-overlapping in parallel primitive arrays, with the same
+ * sign-flipped bounds as {@link Ipv4RangeSet}; adjacent ranges of the same
+ * network are merged on load. An IPv4 lookup first reads where its /16
+ * starts in a 256 KiB table, then binary-searches the few ranges of that /16
+ * only, instead of about 20 probes across half a million ranges; nothing is
+ * allocated. IPv6 ranges are kept at /64 granularity, like the lists, and
+ * searched directly.
+ *
+ * Which ranges are blocked is worked out once per config by
+ * {@link #withBlocked} into a bitset over the ranges, so the login check is
+ * the search plus one bit test.
+ */
+public final class AsnDatabase {
+
+    private static final AsnDatabase EMPTY = new AsnDatabase(new int[0], new int[0], buckets(new int[0]),
+            new long[0], new long[0], new int[0], new char[0], null);
+
+    // Range bounds with the sign bit flipped, so signed order is address order
+    private final int[] v4Starts;
+    private final int[] v4Ends;
+    // v4Buckets[h] is the number of IPv4 ranges starting below the /16 h, for h in [0, 65536]
+    private final int[] v4Buckets;
+    private final long[] v6Starts;
+    private final long[] v6Ends;
+
+    // ASN and country (see packCountry) of each range: the IPv4 ranges, then the IPv6 ones
+    private final int[] asns;
+    private final char[] countries;
+
+    // One bit per range, set if the range is blocked; null if none is
+    private final long[] blocked;
+
+    private AsnDatabase(int[] v4Starts, int[] v4Ends, int[] v4Buckets, long[] v6Starts, long[] v6Ends,
+                        int[] asns, char[] countries, long[] blocked) {
+        this.v4Starts = v4Starts;
+        this.v4Ends = v4Ends;
+        this.v4Buckets = v4Buckets;
+        this.v6Starts = v6Starts;
+        this.v6Ends = v6Ends;
+        this.asns = asns;
+        this.countries = countries;
+        this.blocked = blocked;
+    }
+
+    /** Returns the empty database, which blocks nothing. */
+    public static AsnDatabase empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Loads and merges the given database files. A file ending in {@code .gz}
+     * is read as gzip.
+     *
+     * @throws IOException if a file cannot be read or is not in a known format
+     */
+    public static AsnDatabase load(List<Path> files) throws IOException {
+        Builder builder = new Builder();
+        for (Path file : files) {
+            InputStream in = Files.newInputStream(file);
+            if (file.getFileName().toString().endsWith(".gz")) {
+                in = new GZIPInputStream(in, 64 * 1024);
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8),
+                    64 * 1024)) {
+                builder.read(reader, file);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a view of this database that blocks the given ASNs and
+     * countries. Entries {@link #parseAsn} or {@link #packCountry} reject are
+     * ignored.
+     */
+    public AsnDatabase withBlocked(Collection<String> blockedAsns, Collection<String> blockedCountries) {
+        int[] wanted = blockedAsns.stream().mapToLong(AsnDatabase::parseAsn)
+                .filter(asn -> asn >= 0).mapToInt(asn -> (int) asn).sorted().toArray();
+        boolean[] wantedCountries = new boolean[26 * 26 + 1];
+        for (String country : blockedCountries) {
+            wantedCountries[packCountry(country)] = true;
+        }
+        wantedCountries[0] = false;
+
+        long[] bits = new long[(asns.length + 63) >>> 6];
+        boolean any = false;
+        for (int range = 0; range < asns.length; range++) {
+            if (Arrays.binarySearch(wanted, asns[range]) >= 0 || wantedCountries[countries[range]]) {
+                bits[range >>> 6] |= 1L << range;
+                any = true;
+            }
+        }
+        return new AsnDatabase(v4Starts, v4Ends, v4Buckets, v6Starts, v6Ends, asns, countries,
+                any ? bits : null);
+    }
+
+    /** Checks whether a packed IPv4 address lies in a blocked network. */
+    public boolean isBlocked(int ip) {
+        long[] blocked = this.blocked;
+        if (blocked == null)
+            return false;
+        int range = find(ip);
+        return range >= 0 && (blocked[range >>> 6] & (1L << range)) != 0;
+    }
+
+    /**
+     * Checks whether a packed IPv6 address lies in a blocked network.
+     * IPv4-mapped addresses are checked as IPv4.
+     */
+    public boolean isBlocked(long high, long low) {
+        if (blocked == null)
+            return false;
+        int range = find(high, low);
+        return range >= 0 && (blocked[range >>> 6] & (1L << range)) != 0;
+    }
+
+    /** Returns the range containing a packed IPv4 address, or -1. */
+    public int find(int ip) {
+        int key = ip ^ Integer.MIN_VALUE;
+        int bucket = ip >>> 16;
+
+        // The containing range is the last one starting at or below key: one
+        // of this /16's ranges, or the one before them.
+        int from = Math.max(v4Buckets[bucket] - 1, 0);
+        int to = v4Buckets[bucket + 1];
+        if (from >= to)
+            return -1;
+        int i = Arrays.binarySearch(v4Starts, from, to, key);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return i >= 0 && key <= v4Ends[i] ? i : -1;
+    }
+
+    /** Returns the range containing a packed IPv6 address, or -1. */
+    public int find(long high, long low) {
+        if (IpAddresses.isIpv4Mapped(high, low))
+            return find((int) low);
+
+        long key = high ^ Long.MIN_VALUE;
+        int i = Arrays.binarySearch(v6Starts, key);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return i >= 0 && key <= v6Ends[i] ? v4Starts.length + i : -1;
+    }
+
+    /** Whether {@code range}, as returned by {@link #find}, is blocked. */
+    public boolean isBlockedRange(int range) {
+        return range >= 0 && blocked != null && (blocked[range >>> 6] & (1L << range)) != 0;
+    }
+
+    /** Returns the network of {@code range} for messages, e.g. {@code "AS13335 (US)"}. */
+    public String describe(int range) {
+        char country = countries[range];
+        return "AS" + asns[range] + (country == 0 ? "" : " (" + unpackCountry(country) + ")");
+    }
+
+    /** Returns {@code range} as the CIDR blocks that cover it. */
+    public String rangeText(int range) {
+        List<InetAddressRange> cover = range < v4Starts.length
+                ? InetAddressRange.cover(v4Starts[range] ^ Integer.MIN_VALUE, v4Ends[range] ^ Integer.MIN_VALUE)
+                : InetAddressRange.coverHigh(v6Starts[range - v4Starts.length] ^ Long.MIN_VALUE,
+                        v6Ends[range - v4Starts.length] ^ Long.MIN_VALUE);
+        StringJoiner blocks = new StringJoiner(", ");
+        for (InetAddressRange block : cover) {
+            blocks.add(block.toString());
+        }
+        return blocks.toString();
+    }
+
+    /** Returns the number of ranges loaded. */
+    public int rangeCount() {
+        return asns.length;
+    }
+
+    /** Returns the number of blocked ranges. */
+    public int blockedRangeCount() {
+        if (blocked == null)
+            return 0;
+        int count = 0;
+        for (long word : blocked) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /** Returns the approximate heap footprint of the tables, in bytes. */
+    public long footprintBytes() {
+        return 4L * (v4Starts.length + v4Ends.length + v4Buckets.length + asns.length)
+                + 8L * (v6Starts.length + v6Ends.length)
+                + 2L * countries.length + (blocked == null ? 0 : 8L * blocked.length);
+    }
+
+    // ------------------------------------------------------------------
+
+    /**
+     * Parses an ASN such as {@code "13335"} or {@code "AS13335"}.
+     *
+     * @return the ASN, or -1 if the input is not one
+     */
+    public static long parseAsn(String text) {
+        String digits = text.trim();
+        if (digits.regionMatches(true, 0, "AS", 0, 2)) {
+            digits = digits.substring(2);
+        }
+        if (digits.isEmpty() || digits.length() > 10)
+            return -1;
+        long asn = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            asn = asn * 10 + (c - '0');
+        }
+        return asn <= 0xFFFFFFFFL ? asn : -1;
+    }
+
+    /**
+     * Packs a two-letter ISO country code into a small number, case-insensitively.
+     *
+     * @return the packed code, or 0 if the input is not two letters
+     */
+    public static char packCountry(String code) {
+        String trimmed = code.trim();
+        if (trimmed.length() != 2)
+            return 0;
+        int first = Character.toUpperCase(trimmed.charAt(0)) - 'A';
+        int second = Character.toUpperCase(trimmed.charAt(1)) - 'A';
+        if (first < 0 || first >= 26 || second < 0 || second >= 26)
+            return 0;
+        return (char) (first * 26 + second + 1);
+    }
+
+    /** Counts, for every /16, the ranges that start below it. */
+    private static int[] buckets(int[] starts) {
+        int[] buckets = new int[65537];
+        int range = 0;
+        for (int bucket = 0; bucket <= 65536; bucket++) {
+            // Bucket 65536 lies past the address space and counts every range.
+            long bucketStart = (long) bucket << 16;
+            while (range < starts.length
+                    && Integer.toUnsignedLong(starts[range] ^ Integer.MIN_VALUE) < bucketStart) {
+                range++;
+            }
+            buckets[bucket] = range;
+        }
+        return buckets;
+    }
+
+    private static String unpackCountry(char packed) {
+        int value = packed - 1;
+        return new String(new char[] { (char) ('A' + value / 26), (char) ('A' + value % 26) });
+    }
+
+    /** Collects ranges from database files, then sorts and merges them. */
+    private static final class Builder {
+
+        private int[] v4Starts = new int[1024];
+        private int[] v4Ends = new int[1024];
+        private int[] v4Asns = new int[1024];
+        private char[] v4Countries = new char[1024];
+        private int v4Count;
+
+        private long[] v6Starts = new long[256];
+        private long[] v6Ends = new long[256];
+        private int[] v6Asns = new int[256];
+        private char[] v6Countries = new char[256];
+        private int v6Count;
+
+        private final long[] address = new long[2];
+
+        void read(BufferedReader reader, Path file) throws IOException {
+            String line = reader.readLine();
+            if (line == null)
+                return;
+
+            // GeoLite2 CSVs start with a header naming their columns.
+            boolean csv = line.startsWith("network,");
+            if (csv) {
+                if (!line.startsWith("network,autonomous_system_number"))
+                    throw new IOException(file.getFileName() + " is not a GeoLite2 ASN blocks file");
+                line = reader.readLine();
+            }
+
+            for (; line != null; line = reader.readLine()) {
+                if (line.isEmpty() || line.charAt(0) == '#')
+                    continue;
+                if (csv) {
+                    readCsvLine(line);
+                } else {
+                    readTsvLine(line);
+                }
+            }
+        }
+
+        /** {@code range_start  range_end  AS_number  country_code  AS_description} */
+        private void readTsvLine(String line) {
+            int tab1 = line.indexOf('\t');
+            int tab2 = tab1 < 0 ? -1 : line.indexOf('\t', tab1 + 1);
+            int tab3 = tab2 < 0 ? -1 : line.indexOf('\t', tab2 + 1);
+            if (tab3 < 0)
+                return;
+            int tab4 = line.indexOf('\t', tab3 + 1);
+
+            long asn = parseAsn(line.substring(tab2 + 1, tab3));
+            char country = packCountry(line.substring(tab3 + 1, tab4 < 0 ? line.length() : tab4));
+            // "Not routed" ranges carry nothing to block on.
+            if (asn <= 0 && country == 0)
+                return;
+
+            long first = IpAddresses.parseIpv4(line, 0, tab1);
+            if (first >= 0) {
+                long last = IpAddresses.parseIpv4(line, tab1 + 1, tab2);
+                if (last >= first) {
+                    addIpv4((int) first, (int) last, (int) Math.max(asn, 0), country);
+                }
+                return;
+            }
+            if (!IpAddresses.parseIpv6(line, 0, tab1, address))
+                return;
+            long firstHigh = address[0];
+            if (IpAddresses.parseIpv6(line, tab1 + 1, tab2, address)
+                    && Long.compareUnsigned(firstHigh, address[0]) <= 0) {
+                addIpv6(firstHigh, address[0], (int) Math.max(asn, 0), country);
+            }
+        }
+
+        /** {@code network,autonomous_system_number,autonomous_system_organization} */
+        private void readCsvLine(String line) {
+            int comma1 = line.indexOf(',');
+            int comma2 = comma1 < 0 ? -1 : line.indexOf(',', comma1 + 1);
+            if (comma1 < 0)
+                return;
+
+            long asn = parseAsn(line.substring(comma1 + 1, comma2 < 0 ? line.length() : comma2));
+            InetAddressRange network = InetAddressRange.parse(line.substring(0, comma1));
+            if (asn <= 0 || network == null)
+                return;
+            if (network.isIpv6()) {
+                addIpv6(network.firstHigh(), network.lastHigh(), (int) asn, (char) 0);
+            } else {
+                addIpv4(network.first(), network.last(), (int) asn, (char) 0);
+            }
+        }
+
+        private void addIpv4(int first, int last, int asn, char country) {
+            if (v4Count == v4Starts.length) {
+                int capacity = v4Count * 2;
+                v4Starts = Arrays.copyOf(v4Starts, capacity);
+                v4Ends = Arrays.copyOf(v4Ends, capacity);
+                v4Asns = Arrays.copyOf(v4Asns, capacity);
+                v4Countries = Arrays.copyOf(v4Countries, capacity);
+            }
+            v4Starts[v4Count] = first ^ Integer.MIN_VALUE;
+            v4Ends[v4Count] = last ^ Integer.MIN_VALUE;
+            v4Asns[v4Count] = asn;
+            v4Countries[v4Count] = country;
+            v4Count++;
+        }
+
+        private void addIpv6(long firstHigh, long lastHigh, int asn, char country) {
+            if (v6Count == v6Starts.length) {
+                int capacity = v6Count * 2;
+                v6Starts = Arrays.copyOf(v6Starts, capacity);
+                v6Ends = Arrays.copyOf(v6Ends, capacity);
+                v6Asns = Arrays.copyOf(v6Asns, capacity);
+                v6Countries = Arrays.copyOf(v6Countries, capacity);
+            }
+            v6Starts[v6Count] = firstHigh ^ Long.MIN_VALUE;
+            v6Ends[v6Count] = lastHigh ^ Long.MIN_VALUE;
+            v6Asns[v6Count] = asn;
+            v6Countries[v6Count] = country;
+            v6Count++;
+        }
+
+        AsnDatabase build() {
+            // Published files are already sorted; only merged files need the sort.
+            int[] v4Order = order(v4Count, i -> v4Starts[i] < v4Starts[i - 1],
+                    Comparator.comparingInt(i -> v4Starts[i]));
+            int[] v6Order = order(v6Count, i -> v6Starts[i] < v6Starts[i - 1],
+                    Comparator.comparingLong(i -> v6Starts[i]));
+
+            int[] outV4Starts = new int[v4Count];
+            int[] outV4Ends = new int[v4Count];
+            long[] outV6Starts = new long[v6Count];
+            long[] outV6Ends = new long[v6Count];
+            int[] asns = new int[v4Count + v6Count];
+            char[] countries = new char[v4Count + v6Count];
+
+            // Ranges overlapping an earlier one are dropped; touching ranges of one network are merged.
+            int v4 = 0;
+            for (int i : v4Order) {
+                int start = v4Starts[i];
+                if (v4 > 0 && start <= outV4Ends[v4 - 1]) {
+                    if (v4Ends[i] > outV4Ends[v4 - 1] && asns[v4 - 1] == v4Asns[i]
+                            && countries[v4 - 1] == v4Countries[i]) {
+                        outV4Ends[v4 - 1] = v4Ends[i];
+                    }
+                    continue;
+                }
+                if (v4 > 0 && start == outV4Ends[v4 - 1] + 1 && asns[v4 - 1] == v4Asns[i]
+                        && countries[v4 - 1] == v4Countries[i]) {
+                    outV4Ends[v4 - 1] = v4Ends[i];
+                    continue;
+                }
+                outV4Starts[v4] = start;
+                outV4Ends[v4] = v4Ends[i];
+                asns[v4] = v4Asns[i];
+                countries[v4] = v4Countries[i];
+                v4++;
+            }
+
+            int v6 = 0;
+            for (int i : v6Order) {
+                long start = v6Starts[i];
+                int last = v4 + v6 - 1;
+                // Ranges narrower than a /64 collapse onto the same prefix and overlap here.
+                if (v6 > 0 && start <= outV6Ends[v6 - 1]) {
+                    if (v6Ends[i] > outV6Ends[v6 - 1] && asns[last] == v6Asns[i]
+                            && countries[last] == v6Countries[i]) {
+                        outV6Ends[v6 - 1] = v6Ends[i];
+                    }
+                    continue;
+                }
+                if (v6 > 0 && start == outV6Ends[v6 - 1] + 1 && asns[last] == v6Asns[i]
+                        && countries[last] == v6Countries[i]) {
+                    outV6Ends[v6 - 1] = v6Ends[i];
+                    continue;
+                }
+                outV6Starts[v6] = start;
+                outV6Ends[v6] = v6Ends[i];
+                asns[v4 + v6] = v6Asns[i];
+                countries[v4 + v6] = v6Countries[i];
+                v6++;
+            }
+
+            int[] starts = Arrays.copyOf(outV4Starts, v4);
+            return new AsnDatabase(starts, Arrays.copyOf(outV4Ends, v4), buckets(starts),
+                    Arrays.copyOf(outV6Starts, v6), Arrays.copyOf(outV6Ends, v6),
+                    Arrays.copyOf(asns, v4 + v6), Arrays.copyOf(countries, v4 + v6), null);
+        }
+
+        private static int[] order(int count, IntPredicate descends, Comparator<Integer> byStart) {
+            boolean sorted = IntStream.range(1, count).noneMatch(descends);
+            if (sorted)
+                return IntStream.range(0, count).toArray();
+            return IntStream.range(0, count).boxed().sorted(byStart).mapToInt(Integer::intValue).toArray();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.us3rn1me.noVPN;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Remembers each player's bypass-permission result for a while, so a
+ * flagged player who reconnects repeatedly does not hit the permission
+ * backend (e.g. LuckPerms) on every attempt.
+ *
+ * Results are keyed by UUID and tagged with the permission node they were
+ * checked for, so changing {@code bypass-permission} never serves a stale
+ * answer. Only flagged logins ever reach the cache.
+ */
+public final class BypassCache {
+
+    // Expired entries are swept once the cache grows past this many players,
+    // at most once per TTL, so a large cache does not pay a full scan per insert.
+    private static final int PRUNE_THRESHOLD = 4096;
+
+    private record Entry(String permission, boolean bypass, long expiresNanos) {
+    }
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong nextPruneNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * Returns the cached bypass result for {@code player}, or runs
+     * {@code check} and caches its answer for {@code bypass-cache-seconds}.
+     * A TTL of 0 disables caching.
+     */
+    public boolean hasBypass(UUID player, Config config, BooleanSupplier check) {
+        int ttlSeconds = config.getBypassCacheSeconds();
+        if (ttlSeconds <= 0)
+            return check.getAsBoolean();
+
+        String permission = config.getBypassPermission();
+        long now = System.nanoTime();
+        Entry entry = entries.get(player);
+        if (entry != null && entry.permission().equals(permission) && now - entry.expiresNanos() < 0)
+            return entry.bypass();
+
+        boolean bypass = check.getAsBoolean();
+        long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        long pruneAt = nextPruneNanos.get();
+        if (entries.size() >= PRUNE_THRESHOLD && now - pruneAt >= 0
+                && nextPruneNanos.compareAndSet(pruneAt, now + ttlNanos)) {
+            entries.values().removeIf(stale -> now - stale.expiresNanos() >= 0);
+        }
+        entries.put(player, new Entry(permission, bypass, now + ttlNanos));
+        return bypass;
+    }
+}
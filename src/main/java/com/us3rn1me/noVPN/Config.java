@@ -1,18 +1,104 @@
 package com.us3rn1me.noVPN;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Holds all configuration values loaded from config.toml.
  */
 public class Config {
 
+    /** What to do with logins that arrive before any list data is loaded. */
+    public enum StartupPolicy {
+        /** Let the player in unchecked. */
+        ALLOW,
+        /** Refuse the login with the startup kick message. */
+        DENY,
+        /** Hold the login until data is loaded or the hold time runs out, then check it. */
+        HOLD;
+
+        /** Parses a config value, falling back to {@link #HOLD} for anything unknown. */
+        public static StartupPolicy parse(String value) {
+            for (StartupPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(value.trim()))
+                    return policy;
+            }
+            return HOLD;
+        }
+    }
+
+    /** How IPv4 login checks are answered. */
+    public enum SnapshotEngine {
+        /** Search the source-attributed index directly. */
+        INDEX,
+        /** Answer from a compressed {@link Ipv4Bitmap} derived from the index. */
+        BITMAP;
+
+        /** Parses a config value, falling back to {@link #INDEX} for anything unknown. */
+        public static SnapshotEngine parse(String value) {
+            for (SnapshotEngine engine : values()) {
+                if (engine.name().equalsIgnoreCase(value.trim()))
+                    return engine;
+            }
+            return INDEX;
+        }
+    }
+
+    /** Whether this instance builds its own snapshot or shares one with others on the host. */
+    public enum SnapshotMode {
+        /** Fetch the lists and keep the snapshot to this instance. */
+        STANDALONE,
+        /** Fetch the lists and publish the snapshot to the shared directory. */
+        LEADER,
+        /** Fetch nothing; map whatever the leader publishes to the shared directory. */
+        FOLLOWER;
+
+        /** Parses a config value, falling back to {@link #STANDALONE} for anything unknown. */
+        public static SnapshotMode parse(String value) {
+            for (SnapshotMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim()))
+                    return mode;
+            }
+            return STANDALONE;
+        }
+    }
+
     private final String kickMessage;
     private final String bypassPermission;
     private final boolean logBlocked;
     private final int refreshIntervalMinutes;
     private final int connectTimeoutSeconds;
+    private final int maxConcurrentDownloads;
+    private final int refreshDeadlineSeconds;
     private final List<String> lists;
+    private final int minMatchingSources;
+    private final StartupPolicy startupPolicy;
+    private final int startupHoldSeconds;
+    private final String startupKickMessage;
+    private final Map<String, String> sourceKickMessages;
+    private final String metricsAddress;
+    private final int metricsPort;
+    private final SnapshotEngine snapshotEngine;
+    private final boolean kickOnlinePlayers;
+    private final List<String> allowlist;
+    private final int bypassCacheSeconds;
+    private final SnapshotMode snapshotMode;
+    private final String sharedSnapshotDirectory;
+    private final boolean forwardVerdicts;
+    private final boolean trustProxy;
+    private final int trustProxyTimeoutSeconds;
+    private final String reputationUrl;
+    private final String reputationPattern;
+    private final int reputationBudgetMillis;
+    private final int reputationMaxInFlight;
+    private final int reputationCacheMinutes;
+    private final int reputationCacheSize;
+    private final List<String> asnDatabases;
+    private final List<String> blockedAsns;
+    private final List<String> blockedCountries;
+    private final String verdictSecret;
 
     public Config(
             String kickMessage,
@@ -20,13 +106,69 @@ public class Config {
             boolean logBlocked,
             int refreshIntervalMinutes,
             int connectTimeoutSeconds,
-            List<String> lists) {
+            int maxConcurrentDownloads,
+            int refreshDeadlineSeconds,
+            List<String> lists,
+            int minMatchingSources,
+            StartupPolicy startupPolicy,
+            int startupHoldSeconds,
+            String startupKickMessage,
+            Map<String, String> sourceKickMessages,
+            String metricsAddress,
+            int metricsPort,
+            SnapshotEngine snapshotEngine,
+            boolean kickOnlinePlayers,
+            List<String> allowlist,
+            int bypassCacheSeconds,
+            SnapshotMode snapshotMode,
+            String sharedSnapshotDirectory,
+            boolean forwardVerdicts,
+            boolean trustProxy,
+            int trustProxyTimeoutSeconds,
+            String reputationUrl,
+            String reputationPattern,
+            int reputationBudgetMillis,
+            int reputationMaxInFlight,
+            int reputationCacheMinutes,
+            int reputationCacheSize,
+            List<String> asnDatabases,
+            List<String> blockedAsns,
+            List<String> blockedCountries,
+            String verdictSecret) {
         this.kickMessage = kickMessage;
         this.bypassPermission = bypassPermission;
         this.logBlocked = logBlocked;
         this.refreshIntervalMinutes = refreshIntervalMinutes;
         this.connectTimeoutSeconds = connectTimeoutSeconds;
+        this.maxConcurrentDownloads = Math.max(1, maxConcurrentDownloads);
+        this.refreshDeadlineSeconds = refreshDeadlineSeconds;
         this.lists = List.copyOf(lists);
+        this.minMatchingSources = Math.max(1, minMatchingSources);
+        this.startupPolicy = startupPolicy;
+        this.startupHoldSeconds = Math.max(0, startupHoldSeconds);
+        this.startupKickMessage = startupKickMessage;
+        this.sourceKickMessages = Collections.unmodifiableMap(new LinkedHashMap<>(sourceKickMessages));
+        this.metricsAddress = metricsAddress;
+        this.metricsPort = metricsPort;
+        this.snapshotEngine = snapshotEngine;
+        this.kickOnlinePlayers = kickOnlinePlayers;
+        this.allowlist = List.copyOf(allowlist);
+        this.bypassCacheSeconds = bypassCacheSeconds;
+        this.snapshotMode = snapshotMode;
+        this.sharedSnapshotDirectory = sharedSnapshotDirectory;
+        this.forwardVerdicts = forwardVerdicts;
+        this.trustProxy = trustProxy;
+        this.trustProxyTimeoutSeconds = trustProxyTimeoutSeconds;
+        this.reputationUrl = reputationUrl;
+        this.reputationPattern = reputationPattern;
+        this.reputationBudgetMillis = reputationBudgetMillis;
+        this.reputationMaxInFlight = Math.max(1, reputationMaxInFlight);
+        this.reputationCacheMinutes = reputationCacheMinutes;
+        this.reputationCacheSize = Math.max(1, reputationCacheSize);
+        this.asnDatabases = List.copyOf(asnDatabases);
+        this.blockedAsns = List.copyOf(blockedAsns);
+        this.blockedCountries = List.copyOf(blockedCountries);
+        this.verdictSecret = verdictSecret;
     }
 
     public String getKickMessage() {
@@ -49,7 +191,141 @@ public class Config {
         return connectTimeoutSeconds;
     }
 
+    public int getMaxConcurrentDownloads() {
+        return maxConcurrentDownloads;
+    }
+
+    public int getRefreshDeadlineSeconds() {
+        return refreshDeadlineSeconds;
+    }
+
     public List<String> getLists() {
         return lists;
     }
+
+    public int getMinMatchingSources() {
+        return minMatchingSources;
+    }
+
+    public StartupPolicy getStartupPolicy() {
+        return startupPolicy;
+    }
+
+    public int getStartupHoldSeconds() {
+        return startupHoldSeconds;
+    }
+
+    public String getStartupKickMessage() {
+        return startupKickMessage;
+    }
+
+    /** Returns source-specific kick messages keyed by URL fragment, in config order. */
+    public Map<String, String> getSourceKickMessages() {
+        return sourceKickMessages;
+    }
+
+    /** Returns the address the OpenMetrics endpoint binds to. */
+    public String getMetricsAddress() {
+        return metricsAddress;
+    }
+
+    /** Returns the port of the OpenMetrics endpoint, or 0 if it is disabled. */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /** Returns which structure answers IPv4 login checks. */
+    public SnapshotEngine getSnapshotEngine() {
+        return snapshotEngine;
+    }
+
+    /** Whether players already online are kicked when a refresh newly lists their IP. */
+    public boolean isKickOnlinePlayers() {
+        return kickOnlinePlayers;
+    }
+
+    /** Player UUIDs, IP addresses and CIDR blocks that are never checked against the lists. */
+    public List<String> getAllowlist() {
+        return allowlist;
+    }
+
+    /** How long a bypass-permission result is cached per player, in seconds; 0 disables caching. */
+    public int getBypassCacheSeconds() {
+        return bypassCacheSeconds;
+    }
+
+    /** Whether this instance builds its own snapshot, publishes it, or follows a leader's. */
+    public SnapshotMode getSnapshotMode() {
+        return snapshotMode;
+    }
+
+    /** The directory a leader publishes its snapshot to and followers map it from. */
+    public String getSharedSnapshotDirectory() {
+        return sharedSnapshotDirectory;
+    }
+
+    /** Whether the proxy sends its verdict on each player to backend servers. */
+    public boolean isForwardVerdicts() {
+        return forwardVerdicts;
+    }
+
+    /** Whether a backend trusts the proxy's verdicts instead of loading the lists. */
+    public boolean isTrustProxy() {
+        return trustProxy;
+    }
+
+    /** How long a backend in trust-proxy mode waits for a verdict before kicking the player; 0 never kicks. */
+    public int getTrustProxyTimeoutSeconds() {
+        return trustProxyTimeoutSeconds;
+    }
+
+    /** The reputation service queried for addresses the lists let through, with {@code {ip}} as placeholder; empty disables it. */
+    public String getReputationUrl() {
+        return reputationUrl;
+    }
+
+    /** A regular expression that flags the address when found in the reputation service's response. */
+    public String getReputationPattern() {
+        return reputationPattern;
+    }
+
+    /** How long a reputation lookup may take before the player is let in unchecked, in milliseconds. */
+    public int getReputationBudgetMillis() {
+        return reputationBudgetMillis;
+    }
+
+    /** How many reputation lookups may run at once; logins beyond that are let in unchecked. */
+    public int getReputationMaxInFlight() {
+        return reputationMaxInFlight;
+    }
+
+    /** How long a reputation answer is cached per address, in minutes; 0 disables caching. */
+    public int getReputationCacheMinutes() {
+        return reputationCacheMinutes;
+    }
+
+    /** How many reputation answers are cached at most; the least recently used are dropped first. */
+    public int getReputationCacheSize() {
+        return reputationCacheSize;
+    }
+
+    /** IP-to-ASN database files (iptoasn TSV or GeoLite2 ASN CSV) to block networks by, relative to the plugin folder. */
+    public List<String> getAsnDatabases() {
+        return asnDatabases;
+    }
+
+    /** ASNs whose addresses are blocked, as {@code 13335} or {@code AS13335}. */
+    public List<String> getBlockedAsns() {
+        return blockedAsns;
+    }
+
+    /** Two-letter country codes whose addresses are blocked, per the ASN database. */
+    public List<String> getBlockedCountries() {
+        return blockedCountries;
+    }
+
+    /** Returns the secret shared by the proxy and its backends for signing verdicts, or "" if none is set. */
+    public String getVerdictSecret() {
+        return verdictSecret;
+    }
 }
@@ -1,5 +1,6 @@
 package com.us3rn1me.noVPN;
 
+import com.electronwill.nightconfig.core.UnmodifiableConfig;
 import com.electronwill.nightconfig.core.file.CommentedFileConfig;
 import org.slf4j.Logger;
 
@@ -8,7 +9,9 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Handles loading and reloading of the plugin configuration from
@@ -25,6 +28,8 @@ public class ConfigManager {
     private final Logger logger;
 
     private Config config;
+    private KickMessages kickMessages;
+    private Allowlist allowlist;
 
     public ConfigManager(Path dataDirectory, Logger logger) {
         this.dataDirectory = dataDirectory;
@@ -56,16 +61,91 @@ public class ConfigManager {
             boolean logBlocked = raw.getOrElse("log-blocked", true);
             int refreshInterval = raw.getOrElse("refresh-interval-minutes", 60);
             int connectTimeout = raw.getOrElse("connect-timeout-seconds", 10);
+            int maxConcurrentDownloads = raw.getOrElse("max-concurrent-downloads", 8);
+            int refreshDeadline = raw.getOrElse("refresh-deadline-seconds", 120);
 
             List<String> lists = raw.getOrElse("lists", Collections.emptyList());
+            int minMatchingSources = raw.getOrElse("min-matching-sources", 1);
+
+            Config.StartupPolicy startupPolicy = Config.StartupPolicy.parse(raw.getOrElse("startup-policy", "hold"));
+            int startupHold = raw.getOrElse("startup-hold-seconds", 10);
+            String startupKickMessage = raw.getOrElse(
+                    "startup-kick-message",
+                    "<yellow>The server is still starting up, please try again in a moment.");
+
+            Map<String, String> sourceKickMessages = new LinkedHashMap<>();
+            UnmodifiableConfig sourceMessages = raw.get("source-kick-messages");
+            if (sourceMessages != null) {
+                for (UnmodifiableConfig.Entry entry : sourceMessages.entrySet()) {
+                    Object message = entry.getValue();
+                    sourceKickMessages.put(entry.getKey(), String.valueOf(message));
+                }
+            }
+
+            String metricsAddress = raw.getOrElse("metrics-address", "127.0.0.1");
+            int metricsPort = raw.getOrElse("metrics-port", 0);
+
+            Config.SnapshotEngine snapshotEngine = Config.SnapshotEngine.parse(
+                    raw.getOrElse("snapshot-engine", "index"));
+
+            boolean kickOnlinePlayers = raw.getOrElse("kick-online-players", false);
+
+            List<String> allowlist = raw.getOrElse("allowlist", Collections.emptyList());
+            int bypassCacheSeconds = raw.getOrElse("bypass-cache-seconds", 300);
+
+            Config.SnapshotMode snapshotMode = Config.SnapshotMode.parse(
+                    raw.getOrElse("snapshot-mode", "standalone"));
+            String sharedSnapshotDirectory = raw.getOrElse("shared-snapshot-directory", "");
+
+            // trust-proxy and its timeout only apply to backend servers.
+            boolean forwardVerdicts = raw.getOrElse("forward-verdicts", false);
+            String verdictSecret = raw.getOrElse("verdict-secret", "");
+
+            String reputationUrl = raw.getOrElse("reputation-url", "");
+            String reputationPattern = raw.getOrElse("reputation-pattern", "\"proxy\"\\s*:\\s*(true|\"yes\")");
+            int reputationBudgetMillis = raw.getOrElse("reputation-budget-millis", 1000);
+            int reputationMaxInFlight = raw.getOrElse("reputation-max-in-flight", 8);
+            int reputationCacheMinutes = raw.getOrElse("reputation-cache-minutes", 1440);
+            int reputationCacheSize = raw.getOrElse("reputation-cache-size", 50000);
+
+            List<String> asnDatabases = raw.getOrElse("asn-databases", Collections.emptyList());
+            // ASNs may be written as plain numbers or as "AS13335".
+            List<String> blockedAsns = raw.<List<Object>>getOrElse("blocked-asns", Collections.emptyList())
+                    .stream().map(String::valueOf).toList();
+            List<String> blockedCountries = raw.getOrElse("blocked-countries", Collections.emptyList());
 
             config = new Config(kickMessage, bypassPermission, logBlocked,
-                    refreshInterval, connectTimeout, lists);
+                    refreshInterval, connectTimeout, maxConcurrentDownloads, refreshDeadline,
+                    lists, minMatchingSources, startupPolicy, startupHold, startupKickMessage,
+                    sourceKickMessages, metricsAddress, metricsPort, snapshotEngine, kickOnlinePlayers,
+                    allowlist, bypassCacheSeconds, snapshotMode, sharedSnapshotDirectory, forwardVerdicts,
+                    false, 0, reputationUrl, reputationPattern, reputationBudgetMillis, reputationMaxInFlight,
+                    reputationCacheMinutes, reputationCacheSize, asnDatabases, blockedAsns, blockedCountries,
+                    verdictSecret);
 
         } catch (Exception e) {
             logger.error("Failed to load config.toml — using built-in defaults.", e);
             config = defaultConfig();
         }
+
+        kickMessages = KickMessages.compile(config);
+        allowlist = Allowlist.compile(config);
+        for (String entry : allowlist.getRejected()) {
+            logger.warn("Ignoring allowlist entry \"{}\": not a UUID, IP address or CIDR block.", entry);
+        }
+        for (String entry : config.getBlockedAsns()) {
+            if (AsnDatabase.parseAsn(entry) < 0) {
+                logger.warn("Ignoring blocked-asns entry \"{}\": not an ASN.", entry);
+            }
+        }
+        for (String entry : config.getBlockedCountries()) {
+            if (AsnDatabase.packCountry(entry) == 0) {
+                logger.warn("Ignoring blocked-countries entry \"{}\": not a two-letter country code.", entry);
+            }
+        }
+        if (config.isForwardVerdicts() && config.getVerdictSecret().isEmpty()) {
+            logger.warn("forward-verdicts is enabled but verdict-secret is empty; no verdicts will be sent.");
+        }
     }
 
     /** Returns the currently loaded configuration. */
@@ -73,6 +153,16 @@ public class ConfigManager {
         return config;
     }
 
+    /** Returns the kick messages of the current configuration, parsed once per load. */
+    public KickMessages getKickMessages() {
+        return kickMessages;
+    }
+
+    /** Returns the allowlist of the current configuration, parsed once per load. */
+    public Allowlist getAllowlist() {
+        return allowlist;
+    }
+
     // ------------------------------------------------------------------
 
     private void extractDefault(Path target) {
@@ -98,6 +188,34 @@ public class ConfigManager {
                 true,
                 60,
                 10,
-                Collections.emptyList());
+                8,
+                120,
+                Collections.emptyList(),
+                1,
+                Config.StartupPolicy.HOLD,
+                10,
+                "<yellow>The server is still starting up, please try again in a moment.",
+                Collections.emptyMap(),
+                "127.0.0.1",
+                0,
+                Config.SnapshotEngine.INDEX,
+                false,
+                List.of(),
+                300,
+                Config.SnapshotMode.STANDALONE,
+                "",
+                false,
+                false,
+                0,
+                "",
+                "\"proxy\"\\s*:\\s*(true|\"yes\")",
+                1000,
+                8,
+                1440,
+                50000,
+                List.of(),
+                List.of(),
+                List.of(),
+                "");
     }
 }
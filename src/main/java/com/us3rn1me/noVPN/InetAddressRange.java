@@ -1,31 +1,54 @@
 package com.us3rn1me.noVPN;
 
 import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Represents a single IPv4 CIDR block (e.g. 192.168.0.0/16) and provides
- * a fast membership check for individual addresses.
+ * Represents a single IPv4 or IPv6 CIDR block (e.g. 192.168.0.0/16 or
+ * 2001:db8::/32) and provides a fast membership check for individual
+ * addresses.
  *
- * Only IPv4 is supported because the IP lists we consume are IPv4-only.
+ * IPv4 blocks are held as a packed {@code int}, IPv6 blocks as two packed
+ * {@code long} halves. An IPv4-mapped IPv6 address ({@code ::ffff:a.b.c.d})
+ * is treated as the IPv4 address it wraps.
  */
 public class InetAddressRange {
 
-    private final byte[] networkBytes;
+    private final boolean ipv6;
     private final int prefixLength;
+
+    // IPv4
+    private final int network;
     private final int mask;
 
-    private InetAddressRange(byte[] networkBytes, int prefixLength) {
-        this.networkBytes = networkBytes;
+    // IPv6
+    private final long networkHigh;
+    private final long networkLow;
+
+    private InetAddressRange(int address, int prefixLength) {
+        this.ipv6 = false;
         this.prefixLength = prefixLength;
         this.mask = prefixLength == 0 ? 0 : (0xFFFFFFFF << (32 - prefixLength));
+        this.network = address & mask;
+        this.networkHigh = 0;
+        this.networkLow = 0;
+    }
+
+    private InetAddressRange(long high, long low, int prefixLength) {
+        this.ipv6 = true;
+        this.prefixLength = prefixLength;
+        this.network = 0;
+        this.mask = 0;
+        this.networkHigh = high & highMask(prefixLength);
+        this.networkLow = low & lowMask(prefixLength);
     }
 
     /**
-     * Parses a CIDR string such as {@code "10.0.0.0/8"}.
+     * Parses a CIDR string such as {@code "10.0.0.0/8"} or
+     * {@code "2001:db8::/32"}. Host bits are cleared, so {@code "10.1.2.3/8"}
+     * is normalized to {@code 10.0.0.0/8}. An IPv4-mapped IPv6 block with a
+     * prefix of at least 96 is returned as the equivalent IPv4 block.
      *
      * @param cidr CIDR notation string
      * @return the parsed range, or {@code null} if the input cannot be parsed
@@ -35,7 +58,6 @@ public class InetAddressRange {
         if (slash < 0)
             return null;
 
-        String host = cidr.substring(0, slash);
         int prefix;
         try {
             prefix = Integer.parseInt(cidr.substring(slash + 1));
@@ -43,21 +65,33 @@ public class InetAddressRange {
             return null;
         }
 
-        if (prefix < 0 || prefix > 32)
+        if (cidr.lastIndexOf(':', slash) < 0) {
+            if (prefix < 0 || prefix > 32)
+                return null;
+
+            long addr = IpAddresses.parseIpv4(cidr, 0, slash);
+            if (addr < 0)
+                return null;
+
+            return new InetAddressRange((int) addr, prefix);
+        }
+
+        if (prefix < 0 || prefix > 128)
             return null;
 
-        InetAddress addr;
-        try {
-            addr = InetAddress.getByName(host);
-        } catch (UnknownHostException e) {
+        long[] addr = new long[2];
+        if (!IpAddresses.parseIpv6(cidr, 0, slash, addr))
             return null;
-        }
 
-        byte[] bytes = addr.getAddress();
-        if (bytes.length != 4)
-            return null; // IPv6 not supported
+        if (prefix >= 96 && IpAddresses.isIpv4Mapped(addr[0], addr[1]))
+            return new InetAddressRange((int) addr[1], prefix - 96);
+
+        return new InetAddressRange(addr[0], addr[1], prefix);
+    }
 
-        return new InetAddressRange(bytes, prefix);
+    /** Returns a single-address block for the given IPv6 address. */
+    public static InetAddressRange ofIpv6(long high, long low) {
+        return new InetAddressRange(high, low, 128);
     }
 
     /**
@@ -67,22 +101,138 @@ public class InetAddressRange {
      * @return {@code true} if the address is inside this range
      */
     public boolean contains(InetAddress address) {
-        byte[] candidate = address.getAddress();
-        if (candidate.length != 4)
-            return false;
+        long[] packed = new long[2];
+        IpAddresses.toIpv6(address, packed);
+        return contains(packed[0], packed[1]);
+    }
 
-        int network = ByteBuffer.wrap(networkBytes).order(ByteOrder.BIG_ENDIAN).getInt();
-        int addr = ByteBuffer.wrap(candidate).order(ByteOrder.BIG_ENDIAN).getInt();
+    /**
+     * Checks whether the given packed IPv4 address falls within this block.
+     *
+     * @param address packed IPv4 address
+     * @return {@code true} if the address is inside this range
+     */
+    public boolean contains(int address) {
+        return !ipv6 && (address & mask) == network;
+    }
+
+    /**
+     * Checks whether the given packed IPv6 address falls within this block.
+     * IPv4-mapped addresses are checked against IPv4 blocks.
+     *
+     * @return {@code true} if the address is inside this range
+     */
+    public boolean contains(long high, long low) {
+        if (!ipv6)
+            return IpAddresses.isIpv4Mapped(high, low) && contains((int) low);
 
-        return (network & mask) == (addr & mask);
+        return (high & highMask(prefixLength)) == networkHigh
+                && (low & lowMask(prefixLength)) == networkLow;
+    }
+
+    public boolean isIpv6() {
+        return ipv6;
+    }
+
+    /** Returns the first (network) address of this IPv4 block, packed. */
+    public int first() {
+        return network;
+    }
+
+    /** Returns the last (broadcast) address of this IPv4 block, packed. */
+    public int last() {
+        return network | ~mask;
+    }
+
+    /**
+     * Returns the first /64 prefix (the high half of the address) covered by
+     * this IPv6 block. Blocks longer than /64 are widened to their /64.
+     */
+    public long firstHigh() {
+        return networkHigh;
+    }
+
+    /**
+     * Returns the last /64 prefix (the high half of the address) covered by
+     * this IPv6 block.
+     */
+    public long lastHigh() {
+        return networkHigh | ~highMask(prefixLength);
+    }
+
+    public int prefixLength() {
+        return prefixLength;
+    }
+
+    /**
+     * Returns the smallest list of CIDR blocks that exactly covers the
+     * inclusive range {@code [first, last]} of packed addresses.
+     */
+    public static List<InetAddressRange> cover(int first, int last) {
+        List<InetAddressRange> blocks = new ArrayList<>();
+        long start = first & 0xFFFFFFFFL;
+        long end = last & 0xFFFFFFFFL;
+
+        while (start <= end) {
+            int hostBits = start == 0 ? 32 : Long.numberOfTrailingZeros(start);
+            while ((1L << hostBits) > end - start + 1) {
+                hostBits--;
+            }
+            blocks.add(new InetAddressRange((int) start, 32 - hostBits));
+            start += 1L << hostBits;
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns the smallest list of IPv6 blocks (each /64 or shorter) that
+     * exactly covers the inclusive range {@code [firstHigh, lastHigh]} of
+     * /64 prefixes.
+     */
+    public static List<InetAddressRange> coverHigh(long firstHigh, long lastHigh) {
+        List<InetAddressRange> blocks = new ArrayList<>();
+        long start = firstHigh;
+
+        while (true) {
+            // Largest aligned block at start that does not run past lastHigh.
+            int bits = Long.numberOfTrailingZeros(start);
+            while (bits > 0 && Long.compareUnsigned(start + blockOffset(bits), lastHigh) > 0) {
+                bits--;
+            }
+            blocks.add(new InetAddressRange(start, 0, 64 - bits));
+
+            long blockLast = start + blockOffset(bits);
+            if (blockLast == lastHigh)
+                return blocks;
+            start = blockLast + 1;
+        }
     }
 
     @Override
     public String toString() {
-        try {
-            return InetAddress.getByAddress(networkBytes).getHostAddress() + "/" + prefixLength;
-        } catch (UnknownHostException e) {
-            return Arrays.toString(networkBytes) + "/" + prefixLength;
-        }
+        if (ipv6)
+            return IpAddresses.formatIpv6(networkHigh, networkLow) + "/" + prefixLength;
+        return IpAddresses.formatIpv4(network) + "/" + prefixLength;
+    }
+
+    private static long blockOffset(int bits) {
+        return bits == 64 ? -1L : (1L << bits) - 1;
+    }
+
+    /** Returns the mask selecting the first {@code prefixLength} bits of the high half. */
+    static long highMask(int prefixLength) {
+        if (prefixLength <= 0)
+            return 0;
+        if (prefixLength >= 64)
+            return -1L;
+        return -1L << (64 - prefixLength);
+    }
+
+    private static long lowMask(int prefixLength) {
+        if (prefixLength <= 64)
+            return 0;
+        if (prefixLength >= 128)
+            return -1L;
+        return -1L << (128 - prefixLength);
     }
 }
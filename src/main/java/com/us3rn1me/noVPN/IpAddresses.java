@@ -0,0 +1,287 @@
+package com.us3rn1me.noVPN;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+
+/**
+ * Allocation-free helpers for converting between textual IP addresses and
+ * their packed integer form.
+ *
+ * IPv4 addresses are packed big-endian into an {@code int}, so
+ * {@code 1.2.3.4} becomes {@code 0x01020304}. IPv6 addresses are packed
+ * big-endian into two {@code long}s: the high half (network prefix) and the
+ * low half (interface identifier).
+ */
+public final class IpAddresses {
+
+    private IpAddresses() {
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 address such as {@code "1.2.3.4"}.
+     *
+     * @param text the address text
+     * @return the packed address in the low 32 bits, or {@code -1} if the
+     *         input is not a valid dotted quad
+     */
+    public static long parseIpv4(CharSequence text) {
+        return parseIpv4(text, 0, text.length());
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 address from {@code text[start, end)}.
+     *
+     * @return the packed address in the low 32 bits, or {@code -1} if the
+     *         input is not a valid dotted quad
+     */
+    public static long parseIpv4(CharSequence text, int start, int end) {
+        int result = 0;
+        int octets = 0;
+        int value = 0;
+        int digits = 0;
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > 3)
+                    return -1;
+                value = value * 10 + (c - '0');
+            } else if (c == '.') {
+                if (digits == 0 || value > 255 || octets == 3)
+                    return -1;
+                result = (result << 8) | value;
+                octets++;
+                value = 0;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+
+        if (digits == 0 || value > 255 || octets != 3)
+            return -1;
+
+        return ((result << 8) | value) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Parses an IPv6 address such as {@code "2001:db8::1"}, including the
+     * {@code ::ffff:1.2.3.4} embedded-IPv4 form. A trailing zone id
+     * ({@code %eth0}) is ignored.
+     *
+     * @param out receives the high half in {@code out[0]} and the low half in
+     *            {@code out[1]}; untouched if parsing fails
+     * @return {@code true} if {@code text[start, end)} is a valid address
+     */
+    public static boolean parseIpv6(CharSequence text, int start, int end, long[] out) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '%') {
+                end = i;
+                break;
+            }
+        }
+        if (end - start < 2)
+            return false;
+
+        long hi = 0;
+        long lo = 0;
+        int groups = 0;
+        long headHi = 0;
+        long headLo = 0;
+        int headGroups = -1; // groups before "::", or -1 if none seen yet
+
+        int i = start;
+        if (text.charAt(i) == ':') {
+            if (text.charAt(i + 1) != ':')
+                return false;
+            headGroups = 0;
+            i += 2;
+        }
+
+        while (i < end) {
+            int groupStart = i;
+            int value = 0;
+            int digits = 0;
+            while (i < end) {
+                int d = Character.digit(text.charAt(i), 16);
+                if (d < 0)
+                    break;
+                if (++digits > 4)
+                    return false;
+                value = (value << 4) | d;
+                i++;
+            }
+
+            if (i < end && text.charAt(i) == '.') {
+                // Embedded IPv4 tail, e.g. ::ffff:1.2.3.4 — always the last two groups.
+                long v4 = parseIpv4(text, groupStart, end);
+                if (v4 < 0)
+                    return false;
+                hi = (hi << 32) | (lo >>> 32);
+                lo = (lo << 32) | v4;
+                groups += 2;
+                break;
+            }
+
+            if (digits == 0)
+                return false;
+            hi = (hi << 16) | (lo >>> 48);
+            lo = (lo << 16) | value;
+            groups++;
+
+            if (i == end)
+                break;
+            if (text.charAt(i) != ':' || ++i == end)
+                return false;
+
+            if (text.charAt(i) == ':') {
+                if (headGroups >= 0)
+                    return false;
+                headHi = hi;
+                headLo = lo;
+                headGroups = groups;
+                hi = 0;
+                lo = 0;
+                groups = 0;
+                i++;
+            }
+        }
+
+        if (headGroups < 0) {
+            if (groups != 8)
+                return false;
+        } else {
+            if (headGroups + groups > 7)
+                return false;
+            if (headGroups > 0) {
+                // Move the head groups into place above the zero run and the tail.
+                int shift = 16 * (8 - headGroups);
+                if (shift >= 64) {
+                    hi |= headLo << (shift - 64);
+                } else {
+                    hi |= (headHi << shift) | (headLo >>> (64 - shift));
+                    lo |= headLo << shift;
+                }
+            }
+        }
+
+        out[0] = hi;
+        out[1] = lo;
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the address is an IPv4-mapped IPv6 address
+     * ({@code ::ffff:a.b.c.d}); the IPv4 address is then {@code (int) lo}.
+     */
+    public static boolean isIpv4Mapped(long hi, long lo) {
+        return hi == 0 && (lo >>> 32) == 0xFFFFL;
+    }
+
+    /**
+     * Packs an {@link Inet4Address} into an int without allocating.
+     *
+     * {@link InetAddress#getAddress()} returns a fresh copy of the bytes, so
+     * this reads the address through {@link Inet4Address#hashCode()}, which
+     * every JDK implements as the packed address itself.
+     */
+    public static int packIpv4(Inet4Address address) {
+        return address.hashCode();
+    }
+
+    /**
+     * Packs an {@link InetAddress} into an int.
+     *
+     * @return the packed address in the low 32 bits, or {@code -1} if the
+     *         address is not IPv4
+     */
+    public static long toIpv4(InetAddress address) {
+        byte[] b = address.getAddress();
+        if (b.length != 4)
+            return -1;
+        return (((b[0] & 0xFF) << 24) | ((b[1] & 0xFF) << 16) | ((b[2] & 0xFF) << 8) | (b[3] & 0xFF))
+                & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Packs any {@link InetAddress} into IPv6 form; IPv4 addresses are written
+     * as IPv4-mapped ({@code ::ffff:a.b.c.d}).
+     *
+     * @param out receives the high half in {@code out[0]} and the low half in
+     *            {@code out[1]}
+     */
+    public static void toIpv6(InetAddress address, long[] out) {
+        byte[] b = address.getAddress();
+        if (b.length == 4) {
+            out[0] = 0;
+            out[1] = 0xFFFF00000000L | toIpv4(address);
+            return;
+        }
+
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (b[i] & 0xFF);
+            low = (low << 8) | (b[i + 8] & 0xFF);
+        }
+        out[0] = high;
+        out[1] = low;
+    }
+
+    /** Formats a packed IPv4 address as a dotted quad. */
+    public static String formatIpv4(int ip) {
+        return (ip >>> 24) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+
+    /**
+     * Formats a packed IPv6 address in the RFC 5952 canonical form, with the
+     * longest run of two or more zero groups compressed to {@code ::}.
+     */
+    public static String formatIpv6(long hi, long lo) {
+        int[] groups = new int[8];
+        for (int g = 0; g < 4; g++) {
+            groups[g] = (int) (hi >>> (48 - 16 * g)) & 0xFFFF;
+            groups[g + 4] = (int) (lo >>> (48 - 16 * g)) & 0xFFFF;
+        }
+
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int g = 0; g < 8;) {
+            if (groups[g] != 0) {
+                g++;
+                continue;
+            }
+            int runStart = g;
+            while (g < 8 && groups[g] == 0) {
+                g++;
+            }
+            if (g - runStart > bestLength) {
+                bestStart = runStart;
+                bestLength = g - runStart;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(39);
+        for (int g = 0; g < 8; g++) {
+            if (g == bestStart) {
+                sb.append("::");
+                g += bestLength - 1;
+                continue;
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ':') {
+                sb.append(':');
+            }
+            sb.append(Integer.toHexString(groups[g]));
+        }
+        return sb.toString();
+    }
+
+    /** Returns the length of the dotted-quad form of a packed IPv4 address. */
+    static int ipv4TextLength(int ip) {
+        return 3 + digits(ip >>> 24) + digits((ip >>> 16) & 0xFF) + digits((ip >>> 8) & 0xFF) + digits(ip & 0xFF);
+    }
+
+    private static int digits(int octet) {
+        return octet >= 100 ? 3 : octet >= 10 ? 2 : 1;
+    }
+}
@@ -1,21 +1,46 @@
 package com.us3rn1me.noVPN;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.URI;
 import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Downloads and manages the remote IP/CIDR block lists used for VPN detection.
@@ -23,196 +48,1125 @@ import java.util.regex.Pattern;
  * Lists are refreshed on a configurable schedule. Lookups are thread-safe and
  * use an atomically swapped snapshot so login checks are never blocked by a
  * refresh operation.
+ *
+ * All sources are downloaded concurrently on virtual threads through a single
+ * shared {@link HttpClient}, so lists on the same host (most of them live on
+ * raw.githubusercontent.com) share one HTTP/2 connection.
+ *
+ * Each refresh is compiled into a {@link SnapshotFile} in the data directory
+ * and lookups are served from a memory mapping of it, so the lists take almost
+ * no heap and the last snapshot is available immediately after a restart.
+ *
+ * Every source is kept as its own immutable {@link LookupIndex.Segment}. A
+ * refresh only re-parses sources whose content changed and then merges the
+ * sorted segments into a new index; if nothing changed, nothing is rebuilt.
+ * Local {@code file:} sources are also watched, and a change to one of them
+ * republishes the snapshot with just that source re-read (see
+ * {@link LocalSources}).
+ *
+ * Login lookups and per-source fetch results are recorded in {@link Metrics}.
+ *
+ * With the {@code bitmap} snapshot engine, every published index is also
+ * flattened into an {@link Ipv4Bitmap} of the IPv4 addresses it blocks, and
+ * IPv4 checks are answered by that bitmap alone.
+ *
+ * Addresses the lists let through are also checked against the optional
+ * {@link AsnDatabase}, for {@code blocked-asns} and {@code blocked-countries}.
+ * It is (re)loaded on the refresh thread when its files change.
  */
 public class IpListManager {
 
-    // Matches a plain IPv4 address, optionally followed by :port
-    private static final Pattern IP_PATTERN = Pattern.compile("^(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})(:\\d+)?$");
-
-    // Matches IPv4 CIDR notation
-    private static final Pattern CIDR_PATTERN = Pattern
-            .compile("^(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})/(\\d{1,2})$");
+    /**
+     * The result of {@link #explain(String)}: which sources list an address,
+     * the stored entry that matched, and how long the lookup took.
+     *
+     * @param entry       the matching exact address or range, or {@code null}
+     * @param sources     names of the sources that list the address
+     * @param lookupNanos wall time of the index lookup alone
+     * @param blocked     whether the address would be blocked under the
+     *                    current {@code min-matching-sources}
+     */
+    public record Explanation(String entry, List<String> sources, long lookupNanos, boolean blocked) {
+    }
 
-    // Matches an IP inside JSON (from monosans/proxy-list JSON format)
-    private static final Pattern JSON_IP_PATTERN = Pattern.compile("\"(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})\"");
+    /** A source's last parsed segment along with the validators it was served with. */
+    private record CachedSource(String etag, String lastModified, LookupIndex.Segment segment, int parsedRanges) {
+    }
 
-    private record Snapshot(Set<String> ips, List<InetAddressRange> cidrs) {
+    /** Per-refresh counters shared by the download tasks. */
+    private static final class FetchStats {
+        final AtomicInteger parsedCidrs = new AtomicInteger();
+        final AtomicInteger notModified = new AtomicInteger();
     }
 
+    // Names the current snapshot-<n>.bin generation; see SnapshotFile
+    private static final String SNAPSHOT_FILE_NAME = "snapshot.current";
+    private static final int DECODE_BUFFER_BYTES = 64 * 1024;
+
     private final Logger logger;
-    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(Set.of(), List.of()));
+    private final AtomicReference<LookupIndex> snapshot = new AtomicReference<>(LookupIndex.empty());
 
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "novpn-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Runs refreshes one at a time; the scheduler and /novpn reload only request them
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
         Thread t = new Thread(r, "novpn-refresh");
         t.setDaemon(true);
         return t;
     });
 
+    // The refresh in progress and the one queued behind it, if any; guarded by refreshLock
+    private final Object refreshLock = new Object();
+    private CompletableFuture<Void> runningRefresh;
+    private Config runningConfig;
+    private CompletableFuture<Void> queuedRefresh;
+    private Config queuedConfig;
+
+    private final HttpClient httpClient;
+    private final Path dataDirectory;
+    // Our own snapshot, or the shared one in leader and follower mode; set before start() returns
+    private volatile Path snapshotFile;
+
+    // Follows the leader's snapshot; null unless snapshot-mode is follower
+    private volatile SnapshotFollower follower;
+    private final Metrics metrics = new Metrics();
+    private final Ipv6AddressCache ipv6Addresses = new Ipv6AddressCache();
+
+    // Wall-clock time the current snapshot was built
+    private volatile long snapshotMillis;
+
+    // Number of snapshots published since start; guarded by publish()
+    private volatile long generation;
+
+    // IPv4 verdicts of the current snapshot; null unless the bitmap engine is selected
+    private volatile Ipv4Bitmap bitmap;
+    private volatile Config.SnapshotEngine engine = Config.SnapshotEngine.INDEX;
+
+    // Validators and parsed data from the last successful download, by URL
+    private final Map<String, CachedSource> sourceCache = new ConcurrentHashMap<>();
+
+    // Segments the current snapshot was built from
+    private volatile List<LookupIndex.Segment> publishedSegments = List.of();
+
+    // Held while a new snapshot is built and published, by a refresh or a local reload
+    private final Object publishLock = new Object();
+
+    private final LocalSources localSources;
+
+    // Networks blocked by ASN or country; blocks nothing unless asn-databases is set
+    private volatile AsnDatabase asnDatabase = AsnDatabase.empty();
+    // The unfiltered database and the files and modification times it came from; refresh thread only
+    private AsnDatabase loadedAsnDatabase = AsnDatabase.empty();
+    private String asnDatabaseKey = "";
+
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private volatile long startNanos;
+
     private ScheduledFuture<?> scheduledTask;
+    private volatile int minMatchingSources = 1;
+
+    // Told what each snapshot swap added, on the sweep thread; see setSnapshotListener
+    private volatile Consumer<SnapshotDiff> snapshotListener;
+    private volatile boolean kickOnlinePlayers;
 
-    public IpListManager(Logger logger) {
+    private final ExecutorService sweeper = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "novpn-sweep");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public IpListManager(Logger logger, Path dataDirectory) {
+        this(logger, HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build(), dataDirectory);
+    }
+
+    /**
+     * Creates a manager that downloads through the given client, e.g. one
+     * pointed at a local stand-in server. A {@code null} data directory
+     * keeps snapshots on the heap only.
+     */
+    IpListManager(Logger logger, HttpClient httpClient, Path dataDirectory) {
         this.logger = logger;
+        this.httpClient = httpClient;
+        this.dataDirectory = dataDirectory;
+        this.snapshotFile = dataDirectory == null ? null : dataDirectory.resolve(SNAPSHOT_FILE_NAME);
+        this.localSources = new LocalSources(dataDirectory, logger);
     }
 
     /**
-     * Kicks off an initial list fetch and schedules periodic refreshes.
+     * Maps the last saved snapshot, then starts the initial list fetch in the
+     * background and schedules periodic refreshes. Returns without waiting
+     * for any download; see {@link #isReady()}.
+     *
+     * In leader mode the snapshot is saved to the shared directory instead;
+     * in follower mode nothing is fetched and every snapshot the leader
+     * saves there is mapped as it appears (see {@link SnapshotFollower}).
      *
      * @param config the plugin configuration
      */
     public void start(Config config) {
-        refresh(config);
+        startNanos = System.nanoTime();
+        minMatchingSources = config.getMinMatchingSources();
+        kickOnlinePlayers = config.isKickOnlinePlayers();
+        engine = config.getSnapshotEngine();
+
+        Config.SnapshotMode mode = config.getSnapshotMode();
+        if (mode != Config.SnapshotMode.STANDALONE) {
+            String directory = config.getSharedSnapshotDirectory().trim();
+            if (directory.isEmpty()) {
+                logger.warning("NoVPN: snapshot-mode " + mode.name().toLowerCase()
+                        + " needs a shared-snapshot-directory; running standalone.");
+                mode = Config.SnapshotMode.STANDALONE;
+            } else {
+                Path shared = Path.of(directory);
+                if (!shared.isAbsolute() && dataDirectory != null) {
+                    shared = dataDirectory.resolve(shared);
+                }
+                snapshotFile = shared.resolve(SNAPSHOT_FILE_NAME).normalize();
+            }
+        }
+
+        // A follower never fetches anything; it maps every generation the leader publishes.
+        if (mode == Config.SnapshotMode.FOLLOWER) {
+            logger.info("NoVPN: Following the snapshot published to " + snapshotFile + "; lists are not fetched.");
+            follower = new SnapshotFollower(snapshotFile, logger, this::adopt);
+            follower.start();
+            refresher.execute(() -> updateAsnDatabase(config));
+            return;
+        }
+
+        if (loadSnapshot()) {
+            markReady("from the saved snapshot");
+        }
+
+        requestRefresh(config).whenComplete((ignored, error) -> {
+            if (error != null) {
+                logger.severe("NoVPN: Initial IP list refresh failed: " + error.getMessage());
+            }
+            markReady("after the initial refresh");
+        });
         scheduleRefresh(config);
     }
 
+    /**
+     * Refreshes the lists in the background and returns at once. Requests
+     * are coalesced: while a refresh of the same lists is running, callers
+     * share it; otherwise at most one more refresh is queued behind it, run
+     * with the most recent config, and every later caller shares that one.
+     *
+     * @return a future completed when the refresh the caller joined is done
+     */
+    public CompletableFuture<Void> requestRefresh(Config config) {
+        synchronized (refreshLock) {
+            if (queuedRefresh != null) {
+                queuedConfig = config;
+                return queuedRefresh;
+            }
+            if (runningRefresh == null) {
+                runningRefresh = new CompletableFuture<>();
+                runningConfig = config;
+                runRefresh(runningRefresh, config);
+                return runningRefresh;
+            }
+            if (runningConfig.getLists().equals(config.getLists()))
+                return runningRefresh;
+
+            queuedRefresh = new CompletableFuture<>();
+            queuedConfig = config;
+            return queuedRefresh;
+        }
+    }
+
+    private void runRefresh(CompletableFuture<Void> future, Config config) {
+        try {
+            refresher.execute(() -> {
+                try {
+                    updateAsnDatabase(config);
+                    if (follower != null) {
+                        follower.check();
+                    } else {
+                        refresh(config);
+                    }
+                    future.complete(null);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    synchronized (refreshLock) {
+                        runningRefresh = queuedRefresh;
+                        runningConfig = queuedConfig;
+                        queuedRefresh = null;
+                        queuedConfig = null;
+                        if (runningRefresh != null) {
+                            runRefresh(runningRefresh, runningConfig);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down.
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Returns whether list data is available, either mapped from the saved
+     * snapshot or from a completed initial refresh.
+     */
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    /**
+     * Returns a future that completes once list data is available or after
+     * {@code timeoutSeconds}, whichever comes first.
+     */
+    public CompletableFuture<Void> whenReady(int timeoutSeconds) {
+        return ready.copy().completeOnTimeout(null, timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Blocks the calling thread until list data is available or
+     * {@code timeoutSeconds} pass.
+     */
+    public void awaitReady(int timeoutSeconds) {
+        try {
+            ready.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // Fall through and check against whatever is loaded.
+        }
+    }
+
+    /**
+     * Sets the callback told, on a background thread, which addresses each
+     * new snapshot added, so players already online can be re-checked. It is
+     * only called while {@code kick-online-players} is enabled.
+     */
+    public void setSnapshotListener(Consumer<SnapshotDiff> listener) {
+        this.snapshotListener = listener;
+    }
+
     /**
      * Cancels the refresh scheduler and frees resources.
      */
     public void shutdown() {
         scheduler.shutdownNow();
+        refresher.shutdownNow();
+        if (follower != null) {
+            follower.close();
+        }
+        sweeper.shutdownNow();
+        localSources.close();
+        httpClient.shutdownNow();
     }
 
     /**
-     * Reschedules the refresh task (called after a config reload).
+     * Applies the lookup settings and reschedules the refresh task (called
+     * after a config reload). Returns at once: the ASN settings are applied
+     * and the bitmap engine's view is rebuilt on the refresh thread, which can
+     * take a while for large lists, so the caller's thread (e.g. the Bukkit
+     * main thread) never waits on it. A reload that joins a refresh already
+     * running with the old config still gets its ASN settings this way.
      *
      * @param config updated configuration
+     * @return a future completed once the lookup view reflects {@code config}
      */
-    public void reconfigure(Config config) {
+    public CompletableFuture<Void> reconfigure(Config config) {
+        minMatchingSources = config.getMinMatchingSources();
+        kickOnlinePlayers = config.isKickOnlinePlayers();
+        engine = config.getSnapshotEngine();
         if (scheduledTask != null) {
             scheduledTask.cancel(false);
         }
         scheduleRefresh(config);
+
+        CompletableFuture<Void> rebuilt = new CompletableFuture<>();
+        try {
+            refresher.execute(() -> {
+                try {
+                    updateAsnDatabase(config);
+                    rebuildBitmap();
+                    rebuilt.complete(null);
+                } catch (Throwable e) {
+                    rebuilt.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down.
+            rebuilt.completeExceptionally(e);
+        }
+        return rebuilt;
     }
 
     /**
-     * Checks whether the given IP string is in any of the loaded lists.
+     * Checks whether the given IP string is listed by at least
+     * {@code min-matching-sources} of the loaded lists.
      *
-     * @param rawIp the player's IP address as a string
+     * @param rawIp the player's IPv4 or IPv6 address as a string
      * @return {@code true} if the IP is flagged
      */
     public boolean isBlocked(String rawIp) {
-        Snapshot snap = snapshot.get();
+        long[] address = new long[2];
+        return resolve(rawIp, address) && isBlocked(address[0], address[1]);
+    }
 
-        if (snap.ips().contains(rawIp))
-            return true;
+    /**
+     * Checks a connecting player's address and records the lookup's latency
+     * in the metrics. IPv4 addresses are checked without allocating anything;
+     * IPv6 addresses cost one copy of their bytes the first time they are
+     * seen, and nothing once they are in {@link Ipv6AddressCache}.
+     *
+     * @param address the remote address
+     * @return {@code true} if the IP is flagged
+     */
+    public boolean isBlocked(InetAddress address) {
+        long begin = System.nanoTime();
+        boolean blocked = isListed(address);
+        metrics.recordLookup(System.nanoTime() - begin);
+        return blocked;
+    }
 
-        InetAddress addr;
-        try {
-            addr = InetAddress.getByName(rawIp);
-        } catch (UnknownHostException e) {
-            return false;
+    /**
+     * Checks an address like {@link #isBlocked(InetAddress)}, but without
+     * recording a lookup, for checks that are not logins (e.g. a player
+     * switching servers).
+     *
+     * @param address the remote address
+     * @return {@code true} if the IP is flagged
+     */
+    public boolean isListed(InetAddress address) {
+        if (address instanceof Inet4Address ipv4)
+            return isBlocked(IpAddresses.packIpv4(ipv4));
+
+        Ipv6AddressCache.Entry packed = ipv6Addresses.get(address);
+        return isBlocked(packed.high(), packed.low());
+    }
+
+    /**
+     * Returns the names of the sources that list {@code address}, in source
+     * order, followed by its network (e.g. {@code "AS13335 (US)"}) if that is
+     * blocked, or an empty list. Used to pick the kick message once a player
+     * is known to be blocked.
+     */
+    public List<String> sourcesOf(InetAddress address) {
+        long[] packed = new long[2];
+        IpAddresses.toIpv6(address, packed);
+        LookupIndex index = snapshot.get();
+        List<String> sources = index.sourcesOf(index.match(packed[0], packed[1]));
+
+        AsnDatabase database = asnDatabase;
+        int network = database.find(packed[0], packed[1]);
+        if (!database.isBlockedRange(network))
+            return sources;
+        List<String> withNetwork = new ArrayList<>(sources);
+        withNetwork.add(database.describe(network));
+        return withNetwork;
+    }
+
+    /**
+     * Checks a packed IPv4 address.
+     *
+     * @param ip packed IPv4 address
+     * @return {@code true} if the IP is flagged
+     */
+    public boolean isBlocked(int ip) {
+        Ipv4Bitmap bitmap = this.bitmap;
+        if (bitmap != null)
+            return bitmap.contains(ip) || asnDatabase.isBlocked(ip);
+
+        LookupIndex index = snapshot.get();
+        return index.matchCount(index.match(ip)) >= minMatchingSources || asnDatabase.isBlocked(ip);
+    }
+
+    /**
+     * Checks a packed IPv6 address. IPv4-mapped addresses are checked against
+     * the IPv4 lists; everything else is matched by its /64 prefix.
+     *
+     * @param high the high 64 bits of the address
+     * @param low  the low 64 bits of the address
+     * @return {@code true} if the IP is flagged
+     */
+    public boolean isBlocked(long high, long low) {
+        if (IpAddresses.isIpv4Mapped(high, low))
+            return isBlocked((int) low);
+
+        LookupIndex index = snapshot.get();
+        return index.matchCount(index.match(high, low)) >= minMatchingSources || asnDatabase.isBlocked(high, low);
+    }
+
+    /**
+     * Looks up an address and reports every source that lists it.
+     *
+     * @param rawIp the IP address (or hostname) to explain
+     * @return the explanation, or {@code null} if the input is not an IP
+     *         address
+     */
+    public Explanation explain(String rawIp) {
+        long[] address = new long[2];
+        if (!resolve(rawIp, address))
+            return null;
+
+        LookupIndex index = snapshot.get();
+        AsnDatabase database = asnDatabase;
+        long begin = System.nanoTime();
+        LookupIndex.Match match = index.explain(address[0], address[1]);
+        int network = database.find(address[0], address[1]);
+        long elapsed = System.nanoTime() - begin;
+
+        // A blocked network counts as one more source, and blocks on its own.
+        if (database.isBlockedRange(network)) {
+            List<String> sources = new ArrayList<>(match == null ? List.of() : index.sourcesOf(match.set()));
+            sources.add(database.describe(network));
+            return new Explanation(database.rangeText(network), sources, elapsed, true);
         }
 
-        for (InetAddressRange range : snap.cidrs()) {
-            if (range.contains(addr))
-                return true;
+        if (match == null)
+            return new Explanation(null, List.of(), elapsed, false);
+
+        String entry;
+        if (match.exact()) {
+            entry = IpAddresses.formatIpv4((int) match.first());
+        } else {
+            List<InetAddressRange> cover = match.ipv6()
+                    ? InetAddressRange.coverHigh(match.first(), match.last())
+                    : InetAddressRange.cover((int) match.first(), (int) match.last());
+            StringJoiner blocks = new StringJoiner(", ");
+            for (InetAddressRange block : cover) {
+                blocks.add(block.toString());
+            }
+            entry = blocks.toString();
         }
 
-        return false;
+        return new Explanation(entry, index.sourcesOf(match.set()), elapsed,
+                index.matchCount(match.set()) >= minMatchingSources);
     }
 
     /** Returns the number of plain IPs currently loaded. */
     public int getIpCount() {
-        return snapshot.get().ips().size();
+        return snapshot.get().ipCount();
+    }
+
+    /** Returns the approximate heap footprint of the plain IP table, in bytes. */
+    public long getIpFootprintBytes() {
+        return snapshot.get().ipFootprintBytes();
+    }
+
+    /**
+     * Returns the approximate heap footprint the plain IPs would occupy as a
+     * {@code Set<String>}, the representation used before packed ints.
+     */
+    public long getIpStringFootprintBytes() {
+        return snapshot.get().stringFootprintBytes();
+    }
+
+    /** Returns the approximate footprint of the whole current snapshot, in bytes. */
+    public long getFootprintBytes() {
+        return snapshot.get().footprintBytes();
+    }
+
+    /**
+     * Returns the wall-clock time the current snapshot was built (for one
+     * loaded from disk, when it was written), or 0 if there is none yet.
+     */
+    public long getSnapshotMillis() {
+        return snapshotMillis;
+    }
+
+    /** Returns how many snapshots were published since start; 0 if none yet. */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /** Returns the heap footprint of the bitmap engine, or -1 if it is not in use. */
+    public long getBitmapFootprintBytes() {
+        Ipv4Bitmap bitmap = this.bitmap;
+        return bitmap == null ? -1 : bitmap.footprintBytes();
+    }
+
+    /** Returns the runtime counters shared with the listeners. */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /** Returns whether the current snapshot is served from the mapped snapshot file. */
+    public boolean isSnapshotMapped() {
+        return snapshot.get().isMapped();
     }
 
-    /** Returns the number of CIDR ranges currently loaded. */
+    /** Returns the number of disjoint, source-attributed CIDR ranges loaded. */
     public int getCidrCount() {
-        return snapshot.get().cidrs().size();
+        return snapshot.get().rangeCount();
+    }
+
+    /** Returns the number of network ranges loaded from {@code asn-databases}. */
+    public int getNetworkRangeCount() {
+        return asnDatabase.rangeCount();
+    }
+
+    /** Returns how many network ranges are blocked by {@code blocked-asns} and {@code blocked-countries}. */
+    public int getBlockedNetworkRangeCount() {
+        return asnDatabase.blockedRangeCount();
+    }
+
+    /** Returns the number of disjoint IPv6 /64 ranges loaded. */
+    public int getIpv6RangeCount() {
+        return snapshot.get().ipv6RangeCount();
     }
 
     // ------------------------------------------------------------------
 
-    /** Downloads all configured lists and atomically replaces the snapshot. */
+    /**
+     * Downloads all configured lists, reads the local ones, and atomically
+     * replaces the snapshot. Runs on the calling thread; see
+     * {@link #requestRefresh} for the background, coalesced form.
+     */
     public void refresh(Config config) {
-        logger.info("NoVPN: Refreshing IP lists (" + config.getLists().size() + " sources)...");
+        List<String> urls = config.getLists();
+        logger.info("NoVPN: Refreshing IP lists (" + urls.size() + " sources)...");
+        long begin = System.nanoTime();
+        localSources.watch(urls, this::reloadLocal);
+
+        Duration timeout = Duration.ofSeconds(config.getConnectTimeoutSeconds());
+        Semaphore permits = new Semaphore(config.getMaxConcurrentDownloads());
+        FetchStats stats = new FetchStats();
+
+        List<Integer> remote = new ArrayList<>(urls.size());
+        List<Callable<LookupIndex.Segment>> tasks = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            if (LocalSources.isLocal(urls.get(i)))
+                continue;
 
-        Set<String> ips = new HashSet<>();
-        List<InetAddressRange> cidrs = new ArrayList<>();
+            int source = i;
+            remote.add(source);
+            tasks.add(() -> {
+                permits.acquire();
+                long fetchBegin = System.nanoTime();
+                try {
+                    return fetchList(urls.get(source), source, timeout, stats);
+                } catch (InterruptedException e) {
+                    // Cancelled at the deadline, which is recorded below.
+                    throw e;
+                } catch (Exception e) {
+                    if (!Thread.currentThread().isInterrupted()) {
+                        metrics.recordFetchError(urls.get(source), System.nanoTime() - fetchBegin,
+                                String.valueOf(e.getMessage()));
+                    }
+                    throw e;
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        LookupIndex.Segment[] bySource = new LookupIndex.Segment[urls.size()];
         int failedSources = 0;
 
-        for (String url : config.getLists()) {
+        ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("novpn-fetch-", 0).factory());
+        try {
+            List<Future<LookupIndex.Segment>> results = executor.invokeAll(
+                    tasks, config.getRefreshDeadlineSeconds(), TimeUnit.SECONDS);
+
+            for (int i = 0; i < results.size(); i++) {
+                String url = urls.get(remote.get(i));
+                try {
+                    bySource[remote.get(i)] = results.get(i).get();
+                } catch (CancellationException e) {
+                    failedSources++;
+                    metrics.recordFetchError(url, System.nanoTime() - begin, "refresh deadline exceeded");
+                    logger.fine("NoVPN: Failed to fetch " + url + ": refresh deadline exceeded");
+                } catch (ExecutionException e) {
+                    failedSources++;
+                    logger.fine("NoVPN: Failed to fetch " + url + ": " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Forget validators for sources that were removed from the config.
+        sourceCache.keySet().retainAll(urls);
+        localSources.retain(urls);
+        metrics.retainSources(urls);
+
+        synchronized (publishLock) {
+            // Local sources are read last, under the lock, so a change picked
+            // up by the watcher in the meantime is never published over.
+            for (int i = 0; i < urls.size(); i++) {
+                if (!LocalSources.isLocal(urls.get(i)))
+                    continue;
+                try {
+                    LocalSources.Loaded loaded = loadLocal(urls.get(i), i);
+                    bySource[i] = loaded.segment();
+                    if (loaded.unchanged()) {
+                        stats.notModified.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    failedSources++;
+                    logger.fine("NoVPN: Failed to read " + urls.get(i) + ": " + e.getMessage());
+                }
+            }
+            metrics.recordRefresh(failedSources);
+
+            List<LookupIndex.Segment> segments = new ArrayList<>(urls.size());
+            for (LookupIndex.Segment segment : bySource) {
+                if (segment != null) {
+                    segments.add(segment);
+                    if (LocalSources.isLocal(urls.get(segment.source()))) {
+                        stats.parsedCidrs.addAndGet(segment.ranges().size() + segment.ranges6().size());
+                    }
+                }
+            }
+
+            // Keep serving the last known good data rather than an empty index.
+            if (segments.isEmpty() && !urls.isEmpty()) {
+                logger.warning("NoVPN: All " + urls.size() + " sources failed; keeping the previous lists.");
+                return;
+            }
+
+            // Nothing changed since the last build: every source answered 304 (or
+            // failed the same way), so the published index is still exact.
+            if (sameSegments(segments, publishedSegments) && urls.equals(snapshot.get().sources())) {
+                logger.info("NoVPN: Refreshed in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin)
+                        + " ms — no list changed, keeping the current snapshot.");
+                return;
+            }
+
+            LookupIndex index = persist(LookupIndex.build(urls, segments));
+            publish(index);
+            snapshotMillis = System.currentTimeMillis();
+            publishedSegments = segments;
+
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            logger.info("NoVPN: Refreshed in " + elapsedMs + " ms — " + index.ipCount() + " IPs, "
+                    + stats.parsedCidrs.get() + " CIDRs merged into " + index.rangeCount() + " IPv4 and "
+                    + index.ipv6RangeCount() + " IPv6 /64 ranges (" + stats.notModified.get()
+                    + " source(s) unchanged, " + failedSources + " failed).");
+        }
+    }
+
+    /**
+     * Re-reads one local source after the watcher saw its files change and
+     * publishes a snapshot with only that source replaced. Remote sources
+     * are not touched.
+     */
+    private void reloadLocal(String entry) {
+        long begin = System.nanoTime();
+        synchronized (publishLock) {
+            // Until a refresh has built the snapshot in this run (it may have been
+            // loaded from disk), there are no segments to combine the reload with.
+            if (publishedSegments.isEmpty())
+                return;
+
+            List<String> sources = snapshot.get().sources();
+            int source = sources.indexOf(entry);
+            if (source < 0)
+                return;
+
+            LookupIndex.Segment segment;
             try {
-                fetchList(url, config.getConnectTimeoutSeconds() * 1000, ips, cidrs);
-            } catch (Exception e) {
-                failedSources++;
-                logger.fine("NoVPN: Failed to fetch " + url + ": " + e.getMessage());
+                segment = loadLocal(entry, source).segment();
+            } catch (NoSuchFileException e) {
+                segment = null;
+            } catch (IOException e) {
+                logger.warning("NoVPN: Failed to reload " + entry + ": " + e.getMessage());
+                return;
             }
+
+            List<LookupIndex.Segment> segments = new ArrayList<>(publishedSegments.size() + 1);
+            boolean placed = segment == null;
+            for (LookupIndex.Segment published : publishedSegments) {
+                if (!placed && published.source() >= source) {
+                    segments.add(segment);
+                    placed = true;
+                }
+                if (published.source() != source) {
+                    segments.add(published);
+                }
+            }
+            if (!placed) {
+                segments.add(segment);
+            }
+            if (sameSegments(segments, publishedSegments))
+                return;
+
+            LookupIndex index = persist(LookupIndex.build(sources, segments));
+            publish(index);
+            snapshotMillis = System.currentTimeMillis();
+            publishedSegments = segments;
+
+            logger.info("NoVPN: Reloaded " + entry + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms — "
+                    + index.ipCount() + " IPs, " + index.rangeCount() + " IPv4 and "
+                    + index.ipv6RangeCount() + " IPv6 /64 ranges.");
         }
+    }
 
-        snapshot.set(new Snapshot(Set.copyOf(ips), List.copyOf(cidrs)));
+    /** Reads a local source and records it like a download. */
+    private LocalSources.Loaded loadLocal(String entry, int source) throws IOException {
+        long begin = System.nanoTime();
+        try {
+            LocalSources.Loaded loaded = localSources.load(entry, source);
+            LookupIndex.Segment segment = loaded.segment();
+            metrics.recordFetch(entry, System.nanoTime() - begin, loaded.bytes(),
+                    segment.ips().size() + segment.ranges().size() + segment.ranges6().size(), loaded.unchanged());
+            return loaded;
+        } catch (IOException e) {
+            metrics.recordFetchError(entry, System.nanoTime() - begin, String.valueOf(e.getMessage()));
+            throw e;
+        }
+    }
 
-        logger.info("NoVPN: Refreshed — " + ips.size() + " IPs, " + cidrs.size()
-                + " CIDR ranges loaded (" + failedSources + " source(s) failed).");
+    private void markReady(String how) {
+        if (ready.complete(null)) {
+            logger.info("NoVPN: Lists usable " + how + ", "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms after start.");
+        }
+    }
+
+    /** Makes {@code index} the current snapshot. */
+    private synchronized void publish(LookupIndex index) {
+        LookupIndex previous = snapshot.getAndSet(index);
+        generation++;
+        Ipv4Bitmap previousBitmap = bitmap;
+        rebuildBitmap();
+
+        Consumer<SnapshotDiff> listener = snapshotListener;
+        if (listener == null || !kickOnlinePlayers)
+            return;
+
+        // Diff off the publishing thread; the bitmaps are reused when the bitmap engine has them.
+        Ipv4Bitmap nextBitmap = bitmap;
+        int min = minMatchingSources;
+        sweeper.execute(() -> {
+            try {
+                SnapshotDiff diff = SnapshotDiff.between(previous, previousBitmap, index, nextBitmap, min);
+                if (!diff.isEmpty()) {
+                    listener.accept(diff);
+                }
+            } catch (RuntimeException e) {
+                logger.warning("NoVPN: Failed to check online players: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Derives the bitmap engine's view of the current snapshot, or drops it
+     * when the index engine is selected.
+     */
+    private synchronized void rebuildBitmap() {
+        bitmap = engine == Config.SnapshotEngine.BITMAP
+                ? snapshot.get().toBitmap(minMatchingSources)
+                : null;
+    }
+
+    /** Returns whether both lists hold the very same segment instances, in order. */
+    private static boolean sameSegments(List<LookupIndex.Segment> a, List<LookupIndex.Segment> b) {
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    /** Publishes a prebuilt index without downloading anything; used by the benchmarks. */
+    void install(LookupIndex index) {
+        publish(index);
+        snapshotMillis = System.currentTimeMillis();
+        ready.complete(null);
+    }
+
+    /**
+     * Loads {@code asn-databases} if their files changed since the last load,
+     * and applies the configured blocked ASNs and countries. Runs on the
+     * refresh thread; a database that fails to load keeps the previous one.
+     */
+    private void updateAsnDatabase(Config config) {
+        List<Path> files = new ArrayList<>();
+        StringJoiner key = new StringJoiner("|");
+        try {
+            for (String entry : config.getAsnDatabases()) {
+                Path file = Path.of(entry.trim());
+                if (!file.isAbsolute() && dataDirectory != null) {
+                    file = dataDirectory.resolve(file);
+                }
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                files.add(file);
+                key.add(file + "@" + attributes.lastModifiedTime() + "/" + attributes.size());
+            }
+
+            if (!key.toString().equals(asnDatabaseKey)) {
+                long begin = System.nanoTime();
+                loadedAsnDatabase = files.isEmpty() ? AsnDatabase.empty() : AsnDatabase.load(files);
+                asnDatabaseKey = key.toString();
+                if (!files.isEmpty()) {
+                    logger.info("NoVPN: Loaded " + loadedAsnDatabase.rangeCount() + " network ranges ("
+                            + Units.formatBytes(loadedAsnDatabase.footprintBytes()) + ") in "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms.");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warning("NoVPN: Could not load asn-databases, keeping the previous data: " + e.getMessage());
+        }
+        asnDatabase = loadedAsnDatabase.withBlocked(config.getBlockedAsns(), config.getBlockedCountries());
+    }
+
+    /** Maps the snapshot left by a previous run, if there is a usable one. */
+    private boolean loadSnapshot() {
+        if (snapshotFile == null || !Files.exists(snapshotFile))
+            return false;
+
+        long begin = System.nanoTime();
+        try {
+            LookupIndex index = SnapshotFile.read(snapshotFile);
+            publish(index);
+            snapshotMillis = Files.getLastModifiedTime(snapshotFile).toMillis();
+            logger.info("NoVPN: Loaded snapshot in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms — "
+                    + index.ipCount() + " IPs, " + index.rangeCount() + " IPv4 and "
+                    + index.ipv6RangeCount() + " IPv6 /64 ranges.");
+            return true;
+        } catch (IOException e) {
+            logger.warning("NoVPN: Ignoring unusable snapshot " + snapshotFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Publishes a generation of the leader's snapshot, in follower mode. */
+    private void adopt(LookupIndex index) {
+        synchronized (publishLock) {
+            publish(index);
+            try {
+                snapshotMillis = Files.getLastModifiedTime(snapshotFile).toMillis();
+            } catch (IOException e) {
+                snapshotMillis = System.currentTimeMillis();
+            }
+            publishedSegments = List.of();
+        }
+        logger.info("NoVPN: Mapped the leader's snapshot — " + index.ipCount() + " IPs, "
+                + index.rangeCount() + " IPv4 and " + index.ipv6RangeCount() + " IPv6 /64 ranges.");
+        markReady("from the leader's snapshot");
+    }
+
+    /**
+     * Writes a freshly built index to the snapshot file and returns a mapped
+     * view of it, or the heap index itself if the file cannot be written.
+     */
+    private LookupIndex persist(LookupIndex index) {
+        if (snapshotFile == null)
+            return index;
+
+        try {
+            SnapshotFile.write(index, snapshotFile);
+            return SnapshotFile.read(snapshotFile);
+        } catch (IOException e) {
+            logger.warning("NoVPN: Could not write snapshot " + snapshotFile + ": " + e.getMessage());
+            return index;
+        }
+    }
+
+    /**
+     * Parses an IPv4 or IPv6 literal (or resolves a hostname) into packed
+     * IPv6 form, with IPv4 addresses written as IPv4-mapped.
+     */
+    private static boolean resolve(String rawIp, long[] out) {
+        long ip = IpAddresses.parseIpv4(rawIp);
+        if (ip >= 0) {
+            out[0] = 0;
+            out[1] = 0xFFFF00000000L | ip;
+            return true;
+        }
+
+        if (IpAddresses.parseIpv6(rawIp, 0, rawIp.length(), out))
+            return true;
+
+        // Not a literal — fall back to the resolver for hostnames.
+        try {
+            IpAddresses.toIpv6(InetAddress.getByName(rawIp), out);
+            return true;
+        } catch (UnknownHostException e) {
+            return false;
+        }
     }
 
     private void scheduleRefresh(Config config) {
         int interval = config.getRefreshIntervalMinutes();
-        if (interval <= 0)
+        if (interval <= 0 || follower != null)
             return;
 
         scheduledTask = scheduler.scheduleAtFixedRate(
-                () -> {
-                    try {
-                        refresh(config);
-                    } catch (Exception e) {
-                        logger.severe("NoVPN: Scheduled IP list refresh failed: " + e.getMessage());
+                () -> requestRefresh(config).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        logger.severe("NoVPN: Scheduled IP list refresh failed: " + error.getMessage());
                     }
-                },
+                }),
                 interval, interval, TimeUnit.MINUTES);
     }
 
-    private void fetchList(String rawUrl, int timeoutMs, Set<String> ips, List<InetAddressRange> cidrs)
+    /**
+     * Downloads and parses one source. The request is conditional when the
+     * source was fetched before: on {@code 304 Not Modified} the previously
+     * parsed segment is returned without reading a body.
+     *
+     * gzip and deflate transfer encodings are accepted, and a URL ending in
+     * {@code .gz} is read as a gzip file. Either way the body is inflated
+     * while it streams into the parser.
+     */
+    private LookupIndex.Segment fetchList(String rawUrl, int source, Duration timeout, FetchStats stats)
             throws Exception {
 
-        java.net.URL url = new java.net.URI(rawUrl).toURL();
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setConnectTimeout(timeoutMs);
-        conn.setReadTimeout(timeoutMs);
-        conn.setRequestProperty("User-Agent",
-                "NoVPN/" + BuildConstants.VERSION + " (github.com/us3rn1me/NoVPN)");
-        conn.setInstanceFollowRedirects(true);
+        long begin = System.nanoTime();
+        CachedSource cached = sourceCache.get(rawUrl);
 
-        int status = conn.getResponseCode();
-        if (status < 200 || status >= 300) {
-            throw new Exception("HTTP " + status);
+        HttpRequest.Builder request = HttpRequest.newBuilder(new URI(rawUrl))
+                .timeout(timeout)
+                .header("User-Agent", "NoVPN/" + BuildConstants.VERSION + " (github.com/us3rn1me/NoVPN)")
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        if (cached != null) {
+            if (cached.etag() != null) {
+                request.header("If-None-Match", cached.etag());
+            }
+            if (cached.lastModified() != null) {
+                request.header("If-Modified-Since", cached.lastModified());
+            }
         }
 
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                parseLine(line.trim(), ips, cidrs);
+        HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+        try (CountingInputStream body = new CountingInputStream(response.body())) {
+            int status = response.statusCode();
+            if (status == 304 && cached != null) {
+                stats.notModified.incrementAndGet();
+                stats.parsedCidrs.addAndGet(cached.parsedRanges());
+                LookupIndex.Segment segment = cached.segment().withSource(source);
+                if (segment != cached.segment()) {
+                    sourceCache.put(rawUrl, new CachedSource(cached.etag(), cached.lastModified(),
+                            segment, cached.parsedRanges()));
+                }
+                metrics.recordFetch(rawUrl, System.nanoTime() - begin, 0,
+                        segment.ips().size() + cached.parsedRanges(), true);
+                return segment;
             }
-        } finally {
-            conn.disconnect();
+            if (status < 200 || status >= 300) {
+                throw new Exception("HTTP " + status);
+            }
+
+            LookupIndex.Segment.Builder builder = new LookupIndex.Segment.Builder();
+            try (InputStream decoded = decode(body, response)) {
+                ListParser.parse(decoded, builder);
+            }
+
+            LookupIndex.Segment segment = builder.build(source);
+            int parsedRanges = builder.rangeCount();
+            stats.parsedCidrs.addAndGet(parsedRanges);
+
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            if (etag != null || lastModified != null) {
+                sourceCache.put(rawUrl, new CachedSource(etag, lastModified, segment, parsedRanges));
+            } else {
+                sourceCache.remove(rawUrl);
+            }
+            metrics.recordFetch(rawUrl, System.nanoTime() - begin, body.count,
+                    segment.ips().size() + parsedRanges, false);
+            return segment;
         }
     }
 
-    private void parseLine(String line, Set<String> ips, List<InetAddressRange> cidrs) {
-        if (line.isEmpty() || line.startsWith("#") || line.startsWith(";"))
-            return;
+    /**
+     * Wraps a response body in the decoders for its {@code Content-Encoding}
+     * and, for {@code .gz} URLs, the gzip file format. Some servers label a
+     * {@code .gz} file itself with {@code Content-Encoding: gzip}, so the file
+     * format is only unwrapped if the decoded body still starts like gzip.
+     */
+    private static InputStream decode(InputStream body, HttpResponse<?> response) throws IOException {
+        InputStream in = body;
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim();
+        if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+            in = new GZIPInputStream(in, DECODE_BUFFER_BYTES);
+        } else if (encoding.equalsIgnoreCase("deflate")) {
+            in = inflate(in);
+        } else if (!encoding.equalsIgnoreCase("identity")) {
+            throw new IOException("unsupported Content-Encoding " + encoding);
+        }
 
-        // JSON array entry — e.g. monosans format: {"host":"1.2.3.4",...}
-        if (line.startsWith("{") || line.startsWith("[")) {
-            var matcher = JSON_IP_PATTERN.matcher(line);
-            while (matcher.find()) {
-                ips.add(matcher.group(1));
+        if (response.uri().getPath().endsWith(".gz")) {
+            PushbackInputStream peek = new PushbackInputStream(in, 2);
+            int id1 = peek.read();
+            int id2 = peek.read();
+            if (id2 >= 0) {
+                peek.unread(id2);
             }
-            return;
+            if (id1 >= 0) {
+                peek.unread(id1);
+            }
+            in = id1 == 0x1F && id2 == 0x8B ? new GZIPInputStream(peek, DECODE_BUFFER_BYTES) : peek;
         }
+        return in;
+    }
 
-        // CIDR notation
-        if (CIDR_PATTERN.matcher(line).matches()) {
-            InetAddressRange range = InetAddressRange.parse(line);
-            if (range != null)
-                cidrs.add(range);
-            return;
+    /**
+     * Inflates a {@code deflate}-encoded body. The standard calls for a zlib
+     * stream, but some servers send raw deflate data, so the header decides.
+     */
+    private static InputStream inflate(InputStream in) throws IOException {
+        PushbackInputStream peek = new PushbackInputStream(in, 2);
+        int cmf = peek.read();
+        int flg = peek.read();
+        if (flg >= 0) {
+            peek.unread(flg);
+        }
+        if (cmf >= 0) {
+            peek.unread(cmf);
+        }
+        boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        return new InflaterInputStream(peek, new Inflater(!zlib), DECODE_BUFFER_BYTES) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inf.end();
+            }
+        };
+    }
+
+    /** Counts the bytes read through it, for the per-source stats. */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
         }
 
-        // Plain IP or ip:port
-        var matcher = IP_PATTERN.matcher(line);
-        if (matcher.matches()) {
-            ips.add(matcher.group(1));
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
         }
     }
 }
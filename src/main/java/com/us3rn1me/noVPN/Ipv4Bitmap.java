@@ -0,0 +1,504 @@
+package com.us3rn1me.noVPN;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, compressed set of IPv4 addresses in the style of a Roaring
+ * bitmap.
+ *
+ * The 32-bit address space is split by the high 16 bits into chunks of
+ * 65536 addresses, and each non-empty chunk is stored in whichever of three
+ * containers is smallest for its contents:
+ * <ul>
+ *   <li>an array of sorted low halves, for a few scattered addresses
+ *       (2 bytes each; proxy lists)</li>
+ *   <li>a run list of {@code [start, end]} pairs, for CIDR blocks
+ *       (4 bytes per run; datacenter lists)</li>
+ *   <li>a plain 8 KiB bitmap, for chunks too dense for either</li>
+ * </ul>
+ * A lookup is a binary search over the chunk keys plus one container probe.
+ *
+ * Set operations ({@link #or}, {@link #andNot}, {@link #xor}) walk both
+ * operands as ascending runs and build the result directly, so their cost is
+ * linear in the number of runs rather than in the number of addresses.
+ */
+public final class Ipv4Bitmap {
+
+    private static final Ipv4Bitmap EMPTY = new Ipv4Bitmap(new char[0], new Container[0]);
+
+    // Array containers switch to a bitmap beyond this many values (8 KiB either way).
+    private static final int MAX_ARRAY_VALUES = 4096;
+    private static final int BITMAP_BYTES = 8192;
+
+    private final char[] keys;
+    private final Container[] containers;
+
+    private Ipv4Bitmap(char[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+    }
+
+    /** Returns the empty bitmap. */
+    public static Ipv4Bitmap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Checks whether the packed IPv4 address is in the set.
+     *
+     * @param ip packed IPv4 address
+     */
+    public boolean contains(int ip) {
+        int i = Arrays.binarySearch(keys, (char) (ip >>> 16));
+        return i >= 0 && containers[i].contains((char) ip);
+    }
+
+    /** Returns the number of addresses in the set. */
+    public long cardinality() {
+        long total = 0;
+        for (Container container : containers) {
+            total += container.cardinality();
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /** Returns the approximate heap footprint, in bytes. */
+    public long footprintBytes() {
+        long total = 32 + 16 + 2L * keys.length + 16 + 4L * containers.length;
+        for (Container container : containers) {
+            total += container.footprintBytes();
+        }
+        return total;
+    }
+
+    /** Returns the number of chunks held in array, run and bitmap containers, in that order. */
+    public int[] containerCounts() {
+        int[] counts = new int[3];
+        for (Container container : containers) {
+            if (container instanceof ArrayContainer) {
+                counts[0]++;
+            } else if (container instanceof RunContainer) {
+                counts[1]++;
+            } else {
+                counts[2]++;
+            }
+        }
+        return counts;
+    }
+
+    // ------------------------------------------------------------------
+
+    private static final int OR = 0;
+    private static final int AND_NOT = 1;
+    private static final int XOR = 2;
+
+    /** Returns the addresses in this set or {@code other}. */
+    public Ipv4Bitmap or(Ipv4Bitmap other) {
+        return combine(this, other, OR);
+    }
+
+    /** Returns the addresses in this set but not in {@code other}, e.g. the set minus an allowlist. */
+    public Ipv4Bitmap andNot(Ipv4Bitmap other) {
+        return combine(this, other, AND_NOT);
+    }
+
+    /** Returns the addresses in exactly one of the two sets, e.g. what changed between two snapshots. */
+    public Ipv4Bitmap xor(Ipv4Bitmap other) {
+        return combine(this, other, XOR);
+    }
+
+    /**
+     * Sweeps the run boundaries of both sets in address order and emits a run
+     * wherever the operator holds.
+     */
+    private static Ipv4Bitmap combine(Ipv4Bitmap a, Ipv4Bitmap b, int op) {
+        RunCursor left = new RunCursor(a);
+        RunCursor right = new RunCursor(b);
+        Builder out = new Builder();
+
+        boolean moreLeft = left.next();
+        boolean moreRight = right.next();
+        // Addresses are handled as unsigned longs so the sweep can run past 2^32 - 1.
+        long position = 0;
+        while (moreLeft || moreRight) {
+            if (!moreLeft && op == AND_NOT)
+                break;
+
+            long next = Long.MAX_VALUE;
+            if (moreLeft) {
+                next = Math.min(next, position < left.start ? left.start : left.end + 1);
+            }
+            if (moreRight) {
+                next = Math.min(next, position < right.start ? right.start : right.end + 1);
+            }
+
+            boolean inLeft = moreLeft && position >= left.start;
+            boolean inRight = moreRight && position >= right.start;
+            boolean keep = switch (op) {
+                case OR -> inLeft || inRight;
+                case AND_NOT -> inLeft && !inRight;
+                default -> inLeft != inRight;
+            };
+            if (keep) {
+                out.add((int) position, (int) (next - 1));
+            }
+
+            position = next;
+            if (moreLeft && position > left.end) {
+                moreLeft = left.next();
+            }
+            if (moreRight && position > right.end) {
+                moreRight = right.next();
+            }
+        }
+        return out.build();
+    }
+
+    /** Iterates the runs of a bitmap in ascending address order. */
+    private static final class RunCursor {
+
+        private final Ipv4Bitmap bitmap;
+        private final char[] starts = new char[32768];
+        private final char[] ends = new char[32768];
+        private int chunk = -1;
+        private int runs;
+        private int run;
+
+        long start;
+        long end;
+
+        RunCursor(Ipv4Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        boolean next() {
+            while (run >= runs) {
+                if (++chunk >= bitmap.keys.length)
+                    return false;
+                runs = bitmap.containers[chunk].runs(starts, ends);
+                run = 0;
+            }
+            long high = (long) bitmap.keys[chunk] << 16;
+            start = high | starts[run];
+            end = high | ends[run];
+            run++;
+            return true;
+        }
+    }
+
+    // ------------------------------------------------------------------
+
+    /**
+     * Collects addresses and ranges in ascending order of their first
+     * address; overlapping and adjacent input is merged.
+     */
+    public static final class Builder {
+
+        private final CharList keys = new CharList();
+        private Container[] containers = new Container[16];
+
+        // Runs of the chunk being filled
+        private final char[] starts = new char[32768];
+        private final char[] ends = new char[32768];
+        private int runs;
+        private int chunk = -1;
+
+        // The run being extended, as unsigned addresses
+        private long pendingStart = -1;
+        private long pendingEnd = -1;
+        private long lastStart = -1;
+
+        public void add(int ip) {
+            add(ip, ip);
+        }
+
+        /**
+         * Adds the inclusive range {@code [first, last]} of packed addresses.
+         *
+         * @throws IllegalArgumentException if {@code first} comes before the
+         *                                  first address of the previous call
+         */
+        public void add(int first, int last) {
+            long start = first & 0xFFFFFFFFL;
+            long end = last & 0xFFFFFFFFL;
+            if (start < lastStart)
+                throw new IllegalArgumentException("ranges must be added in ascending order");
+            lastStart = start;
+
+            if (pendingStart >= 0 && start <= pendingEnd + 1) {
+                pendingEnd = Math.max(pendingEnd, end);
+                return;
+            }
+            flushPending();
+            pendingStart = start;
+            pendingEnd = end;
+        }
+
+        public Ipv4Bitmap build() {
+            flushPending();
+            finishChunk();
+            if (keys.size == 0)
+                return EMPTY;
+            return new Ipv4Bitmap(keys.toArray(), Arrays.copyOf(containers, keys.size));
+        }
+
+        private void flushPending() {
+            if (pendingStart < 0)
+                return;
+
+            long start = pendingStart;
+            while (start <= pendingEnd) {
+                int key = (int) (start >>> 16);
+                long chunkEnd = Math.min(pendingEnd, ((long) key << 16) | 0xFFFF);
+                if (key != chunk) {
+                    finishChunk();
+                    chunk = key;
+                }
+                starts[runs] = (char) start;
+                ends[runs] = (char) chunkEnd;
+                runs++;
+                start = chunkEnd + 1;
+            }
+            pendingStart = -1;
+        }
+
+        private void finishChunk() {
+            if (runs == 0)
+                return;
+
+            int cardinality = 0;
+            for (int i = 0; i < runs; i++) {
+                cardinality += ends[i] - starts[i] + 1;
+            }
+
+            long arrayBytes = cardinality <= MAX_ARRAY_VALUES ? 2L * cardinality : Long.MAX_VALUE;
+            long runBytes = 4L * runs;
+            Container container;
+            if (arrayBytes <= runBytes && arrayBytes <= BITMAP_BYTES) {
+                container = ArrayContainer.of(starts, ends, runs, cardinality);
+            } else if (runBytes <= BITMAP_BYTES) {
+                container = new RunContainer(Arrays.copyOf(starts, runs), Arrays.copyOf(ends, runs), cardinality);
+            } else {
+                container = BitmapContainer.of(starts, ends, runs, cardinality);
+            }
+
+            if (keys.size == containers.length) {
+                containers = Arrays.copyOf(containers, containers.length * 2);
+            }
+            containers[keys.size] = container;
+            keys.add((char) chunk);
+            runs = 0;
+        }
+    }
+
+    private static final class CharList {
+
+        private char[] values = new char[16];
+        private int size;
+
+        void add(char value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        char[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    // ------------------------------------------------------------------
+
+    /** The addresses of one 65536-address chunk, by their low 16 bits. */
+    private interface Container {
+
+        boolean contains(char low);
+
+        int cardinality();
+
+        long footprintBytes();
+
+        /** Writes the runs of this container in ascending order and returns how many there are. */
+        int runs(char[] starts, char[] ends);
+    }
+
+    private static final class ArrayContainer implements Container {
+
+        private final char[] values;
+
+        private ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        static ArrayContainer of(char[] starts, char[] ends, int runs, int cardinality) {
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < runs; i++) {
+                for (int v = starts[i]; v <= ends[i]; v++) {
+                    values[n++] = (char) v;
+                }
+            }
+            return new ArrayContainer(values);
+        }
+
+        @Override
+        public boolean contains(char low) {
+            return Arrays.binarySearch(values, low) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        public long footprintBytes() {
+            return 16 + 16 + 2L * values.length;
+        }
+
+        @Override
+        public int runs(char[] starts, char[] ends) {
+            int runs = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (runs > 0 && values[i] == ends[runs - 1] + 1) {
+                    ends[runs - 1] = values[i];
+                } else {
+                    starts[runs] = values[i];
+                    ends[runs] = values[i];
+                    runs++;
+                }
+            }
+            return runs;
+        }
+    }
+
+    private static final class RunContainer implements Container {
+
+        private final char[] starts;
+        private final char[] ends;
+        private final int cardinality;
+
+        RunContainer(char[] starts, char[] ends, int cardinality) {
+            this.starts = starts;
+            this.ends = ends;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public boolean contains(char low) {
+            int lo = 0;
+            int hi = starts.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (starts[mid] <= low) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return hi >= 0 && low <= ends[hi];
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public long footprintBytes() {
+            return 24 + 2 * (16 + 2L * starts.length);
+        }
+
+        @Override
+        public int runs(char[] starts, char[] ends) {
+            System.arraycopy(this.starts, 0, starts, 0, this.starts.length);
+            System.arraycopy(this.ends, 0, ends, 0, this.ends.length);
+            return this.starts.length;
+        }
+    }
+
+    private static final class BitmapContainer implements Container {
+
+        private final long[] words;
+        private final int cardinality;
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static BitmapContainer of(char[] starts, char[] ends, int runs, int cardinality) {
+            long[] words = new long[1024];
+            for (int i = 0; i < runs; i++) {
+                int first = starts[i];
+                int last = ends[i];
+                int firstWord = first >>> 6;
+                int lastWord = last >>> 6;
+                long firstMask = -1L << first;
+                long lastMask = -1L >>> (63 - (last & 63));
+                if (firstWord == lastWord) {
+                    words[firstWord] |= firstMask & lastMask;
+                } else {
+                    words[firstWord] |= firstMask;
+                    for (int w = firstWord + 1; w < lastWord; w++) {
+                        words[w] = -1L;
+                    }
+                    words[lastWord] |= lastMask;
+                }
+            }
+            return new BitmapContainer(words, cardinality);
+        }
+
+        @Override
+        public boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public long footprintBytes() {
+            return 24 + 16 + 8L * words.length;
+        }
+
+        @Override
+        public int runs(char[] starts, char[] ends) {
+            int runs = 0;
+            int v = 0;
+            while (v < 65536) {
+                // Skip to the next set bit, then to the next clear one.
+                int start = nextBit(v, true);
+                if (start < 0)
+                    break;
+                int end = nextBit(start, false);
+                int last = end < 0 ? 65535 : end - 1;
+                starts[runs] = (char) start;
+                ends[runs] = (char) last;
+                runs++;
+                if (end < 0)
+                    break;
+                v = end;
+            }
+            return runs;
+        }
+
+        private int nextBit(int from, boolean set) {
+            int w = from >>> 6;
+            long word = (set ? words[w] : ~words[w]) & (-1L << from);
+            while (word == 0) {
+                if (++w == words.length)
+                    return -1;
+                word = set ? words[w] : ~words[w];
+            }
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+    }
+}
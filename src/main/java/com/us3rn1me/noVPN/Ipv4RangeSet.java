@@ -0,0 +1,139 @@
+package com.us3rn1me.noVPN;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of IPv4 ranges stored as sorted, non-overlapping
+ * {@code [start, end]} pairs in two parallel {@code int[]}s.
+ *
+ * Ranges are normalized, deduplicated and coalesced at build time, so a
+ * lookup is a single binary search regardless of how many overlapping CIDRs
+ * the sources contained. Bounds are stored with the sign bit flipped so that
+ * signed {@code int} comparison matches unsigned address order.
+ */
+public final class Ipv4RangeSet {
+
+    private static final Ipv4RangeSet EMPTY = new Ipv4RangeSet(new int[0], new int[0]);
+
+    private final int[] starts;
+    private final int[] ends;
+
+    private Ipv4RangeSet(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /** Returns the empty range set. */
+    public static Ipv4RangeSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Checks whether the given packed address falls inside any range.
+     *
+     * @param ip packed IPv4 address
+     * @return {@code true} if covered
+     */
+    public boolean contains(int ip) {
+        int key = ip ^ Integer.MIN_VALUE;
+
+        // Find the last range whose start is <= key.
+        int lo = 0;
+        int hi = starts.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi >= 0 && key <= ends[hi];
+    }
+
+    /** Returns the first address of the {@code i}-th range, packed. */
+    int first(int i) {
+        return starts[i] ^ Integer.MIN_VALUE;
+    }
+
+    /** Returns the last address of the {@code i}-th range, packed. */
+    int last(int i) {
+        return ends[i] ^ Integer.MIN_VALUE;
+    }
+
+    /** Returns the number of merged ranges. */
+    public int size() {
+        return starts.length;
+    }
+
+    /** Returns the approximate heap footprint of this set, in bytes. */
+    public long footprintBytes() {
+        return 32 + 8L * starts.length;
+    }
+
+    /**
+     * Accumulates ranges in any order. Overlapping and adjacent ranges are
+     * merged by {@link #build()}.
+     */
+    public static final class Builder {
+
+        // Each range packed as (biasedStart << 32 | biasedEnd) so a plain
+        // long sort orders by start.
+        private long[] buffer = new long[256];
+        private int size;
+
+        public Builder add(InetAddressRange range) {
+            return add(range.first(), range.last());
+        }
+
+        /**
+         * Adds the inclusive range {@code [first, last]} of packed addresses
+         * (compared unsigned).
+         */
+        public Builder add(int first, int last) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size << 1);
+            }
+            long start = first ^ Integer.MIN_VALUE;
+            long end = (last ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+            buffer[size++] = (start << 32) | end;
+            return this;
+        }
+
+        /** Returns the number of ranges added so far, before merging. */
+        public int size() {
+            return size;
+        }
+
+        public Ipv4RangeSet build() {
+            if (size == 0)
+                return EMPTY;
+
+            long[] sorted = Arrays.copyOf(buffer, size);
+            Arrays.sort(sorted);
+
+            int[] starts = new int[size];
+            int[] ends = new int[size];
+            int count = 0;
+
+            for (long packed : sorted) {
+                int start = (int) (packed >> 32);
+                int end = (int) packed;
+
+                // Merge with the previous range when it overlaps or touches.
+                if (count > 0 && (ends[count - 1] == Integer.MAX_VALUE || start <= ends[count - 1] + 1)) {
+                    if (end > ends[count - 1]) {
+                        ends[count - 1] = end;
+                    }
+                    continue;
+                }
+
+                starts[count] = start;
+                ends[count] = end;
+                count++;
+            }
+
+            return new Ipv4RangeSet(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.us3rn1me.noVPN;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of IPv4 addresses stored as a sorted array of packed ints.
+ *
+ * Membership is a binary search over a single {@code int[]}, so a lookup
+ * allocates nothing and every entry costs exactly four bytes of heap. Values
+ * are stored with the sign bit flipped, like {@link Ipv4RangeSet}, so the
+ * array is in unsigned address order and sets can be merged directly.
+ */
+public final class Ipv4Set {
+
+    private static final Ipv4Set EMPTY = new Ipv4Set(new int[0]);
+
+    private final int[] values;
+
+    private Ipv4Set(int[] values) {
+        this.values = values;
+    }
+
+    /** Returns the empty set. */
+    public static Ipv4Set empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Checks whether the given packed address is in this set.
+     *
+     * @param ip packed IPv4 address
+     * @return {@code true} if present
+     */
+    public boolean contains(int ip) {
+        return Arrays.binarySearch(values, ip ^ Integer.MIN_VALUE) >= 0;
+    }
+
+    /** Returns the {@code i}-th address in ascending unsigned order. */
+    int get(int i) {
+        return values[i] ^ Integer.MIN_VALUE;
+    }
+
+    /** Returns the biased ({@code ip ^ Integer.MIN_VALUE}) key of the {@code i}-th address. */
+    int key(int i) {
+        return values[i];
+    }
+
+    /** Returns the number of distinct addresses in this set. */
+    public int size() {
+        return values.length;
+    }
+
+    /** Returns the approximate heap footprint of this set, in bytes. */
+    public long footprintBytes() {
+        return 16 + 4L * values.length;
+    }
+
+    /**
+     * Accumulates packed addresses into a growable primitive buffer. Duplicates
+     * are allowed and removed by {@link #build()}.
+     */
+    public static final class Builder {
+
+        private int[] buffer = new int[1024];
+        private int size;
+
+        public Builder add(int ip) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size << 1);
+            }
+            buffer[size++] = ip ^ Integer.MIN_VALUE;
+            return this;
+        }
+
+        public Ipv4Set build() {
+            return build(Ipv4RangeSet.empty());
+        }
+
+        /**
+         * Builds the set, dropping any address already covered by
+         * {@code covered} since the range lookup will match it anyway.
+         */
+        public Ipv4Set build(Ipv4RangeSet covered) {
+            if (size == 0)
+                return EMPTY;
+
+            int[] sorted = Arrays.copyOf(buffer, size);
+            Arrays.sort(sorted);
+
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                int key = sorted[i];
+                if ((i > 0 && key == sorted[i - 1]) || covered.contains(key ^ Integer.MIN_VALUE))
+                    continue;
+                sorted[unique++] = key;
+            }
+            if (unique == 0)
+                return EMPTY;
+
+            return new Ipv4Set(unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.us3rn1me.noVPN;
+
+import java.net.InetAddress;
+
+/**
+ * Remembers the packed form of recently seen IPv6 addresses, so checking a
+ * returning IPv6 player does not allocate.
+ *
+ * {@link InetAddress#getAddress()} returns a fresh copy of the bytes and the
+ * JDK offers no other way to read an IPv6 address, but
+ * {@link InetAddress#hashCode()} and {@link InetAddress#equals(Object)} both
+ * read the internal bytes in place. Entries sit in a fixed, direct-mapped
+ * table indexed by the address hash; a colliding address simply replaces the
+ * previous one. Entries are immutable, so the table needs no locking.
+ */
+final class Ipv6AddressCache {
+
+    private static final int SLOTS = 1024;
+
+    /** An address and its packed form. */
+    record Entry(InetAddress address, long high, long low) {
+    }
+
+    private final Entry[] slots = new Entry[SLOTS];
+
+    /**
+     * Returns {@code address} packed like {@link IpAddresses#toIpv6}, reading
+     * the cached entry when the same address was packed before.
+     */
+    Entry get(InetAddress address) {
+        int hash = address.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (SLOTS - 1);
+        Entry entry = slots[slot];
+        if (entry != null && entry.address().equals(address))
+            return entry;
+
+        long[] packed = new long[2];
+        IpAddresses.toIpv6(address, packed);
+        entry = new Entry(address, packed[0], packed[1]);
+        slots[slot] = entry;
+        return entry;
+    }
+}
@@ -0,0 +1,146 @@
+package com.us3rn1me.noVPN;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of IPv6 ranges aggregated at /64 granularity.
+ *
+ * Only the high 64 bits of an address (its /64 prefix) are indexed: a single
+ * listed address blocks its whole /64, which is the smallest unit providers
+ * hand to a subscriber anyway, and keeps each range to two {@code long}s.
+ * Ranges are stored like {@link Ipv4RangeSet}: sorted, non-overlapping and
+ * with the sign bit flipped so signed comparison matches unsigned order.
+ */
+public final class Ipv6RangeSet {
+
+    private static final Ipv6RangeSet EMPTY = new Ipv6RangeSet(new long[0], new long[0]);
+
+    private final long[] starts;
+    private final long[] ends;
+
+    private Ipv6RangeSet(long[] starts, long[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /** Returns the empty range set. */
+    public static Ipv6RangeSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Checks whether the /64 prefix {@code high} falls inside any range.
+     *
+     * @param high the high half of a packed IPv6 address
+     * @return {@code true} if covered
+     */
+    public boolean contains(long high) {
+        long key = high ^ Long.MIN_VALUE;
+
+        int lo = 0;
+        int hi = starts.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi >= 0 && key <= ends[hi];
+    }
+
+    /** Returns the first /64 prefix of the {@code i}-th range. */
+    long firstHigh(int i) {
+        return starts[i] ^ Long.MIN_VALUE;
+    }
+
+    /** Returns the last /64 prefix of the {@code i}-th range. */
+    long lastHigh(int i) {
+        return ends[i] ^ Long.MIN_VALUE;
+    }
+
+    /** Returns the number of merged ranges. */
+    public int size() {
+        return starts.length;
+    }
+
+    /** Returns the approximate heap footprint of this set, in bytes. */
+    public long footprintBytes() {
+        return 32 + 16L * starts.length;
+    }
+
+    /**
+     * Accumulates ranges in any order. Overlapping and adjacent ranges are
+     * merged by {@link #build()}.
+     */
+    public static final class Builder {
+
+        private long[] starts = new long[64];
+        private long[] ends = new long[64];
+        private int size;
+
+        /** Adds an IPv6 block, widened to whole /64 prefixes. */
+        public Builder add(InetAddressRange range) {
+            return add(range.firstHigh(), range.lastHigh());
+        }
+
+        /** Adds the /64 prefix containing a single address. */
+        public Builder addAddress(long high) {
+            return add(high, high);
+        }
+
+        /** Adds the inclusive range {@code [firstHigh, lastHigh]} of /64 prefixes. */
+        public Builder add(long firstHigh, long lastHigh) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size << 1);
+                ends = Arrays.copyOf(ends, size << 1);
+            }
+            starts[size] = firstHigh ^ Long.MIN_VALUE;
+            ends[size] = lastHigh ^ Long.MIN_VALUE;
+            size++;
+            return this;
+        }
+
+        /** Returns the number of ranges added so far, before merging. */
+        public int size() {
+            return size;
+        }
+
+        public Ipv6RangeSet build() {
+            if (size == 0)
+                return EMPTY;
+
+            // Sorting starts and ends independently is enough to compute a
+            // union: walk both in order, counting how many ranges are open.
+            long[] s = Arrays.copyOf(starts, size);
+            long[] e = Arrays.copyOf(ends, size);
+            Arrays.sort(s);
+            Arrays.sort(e);
+
+            long[] outStarts = new long[size];
+            long[] outEnds = new long[size];
+            int count = 0;
+            int open = 0;
+            long current = 0;
+
+            for (int i = 0, j = 0; j < size;) {
+                if (i < size && (e[j] == Long.MAX_VALUE || s[i] <= e[j] + 1)) {
+                    if (open++ == 0) {
+                        current = s[i];
+                    }
+                    i++;
+                } else {
+                    if (--open == 0) {
+                        outStarts[count] = current;
+                        outEnds[count] = e[j];
+                        count++;
+                    }
+                    j++;
+                }
+            }
+
+            return new Ipv6RangeSet(Arrays.copyOf(outStarts, count), Arrays.copyOf(outEnds, count));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.us3rn1me.noVPN;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextReplacementConfig;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The kick messages of one loaded {@link Config}, parsed once.
+ *
+ * Every MiniMessage template is deserialized when the config is loaded, and
+ * its legacy ({@code §}-coded) form is serialized at the same time. The
+ * {@code <ip>} and {@code <source>} placeholders are parsed into private-use
+ * marker characters, so rendering a kick only swaps those markers for the
+ * actual values instead of parsing the template again. The replacement for
+ * each marker is built once; the values of the kick being rendered reach it
+ * through a per-thread slot. A template without placeholders is returned as
+ * is.
+ */
+public final class KickMessages {
+
+    private static final MiniMessage MM = MiniMessage.miniMessage();
+    private static final LegacyComponentSerializer LEGACY = LegacyComponentSerializer.legacySection();
+
+    private static final String IP_MARKER = "\uE000";
+    private static final String SOURCE_MARKER = "\uE001";
+
+    private static final TagResolver PLACEHOLDERS = TagResolver.resolver(
+            Placeholder.component("ip", Component.text(IP_MARKER)),
+            Placeholder.component("source", Component.text(SOURCE_MARKER)));
+
+    // The <ip> and <source> values of the kick being rendered on this thread
+    private static final ThreadLocal<String[]> RENDERING = ThreadLocal.withInitial(() -> new String[2]);
+
+    private static final TextReplacementConfig IP_REPLACEMENT = TextReplacementConfig.builder()
+            .matchLiteral(IP_MARKER)
+            .replacement((match, text) -> text.content(RENDERING.get()[0]))
+            .build();
+    private static final TextReplacementConfig SOURCE_REPLACEMENT = TextReplacementConfig.builder()
+            .matchLiteral(SOURCE_MARKER)
+            .replacement((match, text) -> text.content(RENDERING.get()[1]))
+            .build();
+
+    /** A source-specific message, used when a list whose URL contains {@code match} flagged the player. */
+    private record Rule(String match, Template template) {
+    }
+
+    private final Template defaultTemplate;
+    private final Template startupTemplate;
+    private final List<Rule> rules;
+
+    private KickMessages(Template defaultTemplate, Template startupTemplate, List<Rule> rules) {
+        this.defaultTemplate = defaultTemplate;
+        this.startupTemplate = startupTemplate;
+        this.rules = rules;
+    }
+
+    /** Parses every kick message in {@code config}. */
+    public static KickMessages compile(Config config) {
+        List<Rule> rules = new ArrayList<>();
+        for (Map.Entry<String, String> entry : config.getSourceKickMessages().entrySet()) {
+            rules.add(new Rule(entry.getKey(), new Template(entry.getValue())));
+        }
+        return new KickMessages(new Template(config.getKickMessage()),
+                new Template(config.getStartupKickMessage()), List.copyOf(rules));
+    }
+
+    /**
+     * Returns the kick component for a blocked player.
+     *
+     * @param ip      the player's address, for {@code <ip>}
+     * @param sources the sources that list the address, in source order
+     */
+    public Component component(String ip, List<String> sources) {
+        String source = sources.isEmpty() ? "" : sources.get(0);
+        for (String name : sources) {
+            Template template = ruleFor(name);
+            if (template != null)
+                return template.component(ip, name);
+        }
+        return defaultTemplate.component(ip, source);
+    }
+
+    /** Like {@link #component} but as a legacy {@code §}-coded string, for Bukkit. */
+    public String legacy(String ip, List<String> sources) {
+        String source = sources.isEmpty() ? "" : sources.get(0);
+        for (String name : sources) {
+            Template template = ruleFor(name);
+            if (template != null)
+                return template.legacy(ip, name);
+        }
+        return defaultTemplate.legacy(ip, source);
+    }
+
+    /** Returns the message for logins refused by the {@code deny} startup policy. */
+    public Component startupComponent() {
+        return startupTemplate.component;
+    }
+
+    /** Like {@link #startupComponent()} but as a legacy string. */
+    public String startupLegacy() {
+        return startupTemplate.legacy;
+    }
+
+    private Template ruleFor(String source) {
+        for (Rule rule : rules) {
+            if (source.contains(rule.match()))
+                return rule.template();
+        }
+        return null;
+    }
+
+    /** One parsed template together with its legacy form. */
+    private static final class Template {
+
+        final Component component;
+        final String legacy;
+        final boolean hasIp;
+        final boolean hasSource;
+
+        Template(String miniMessage) {
+            this.component = MM.deserialize(miniMessage, PLACEHOLDERS);
+            this.legacy = LEGACY.serialize(component);
+            this.hasIp = legacy.contains(IP_MARKER);
+            this.hasSource = legacy.contains(SOURCE_MARKER);
+        }
+
+        Component component(String ip, String source) {
+            if (!hasIp && !hasSource)
+                return component;
+
+            String[] values = RENDERING.get();
+            values[0] = ip;
+            values[1] = source;
+            try {
+                Component result = component;
+                if (hasIp) {
+                    result = result.replaceText(IP_REPLACEMENT);
+                }
+                if (hasSource) {
+                    result = result.replaceText(SOURCE_REPLACEMENT);
+                }
+                return result;
+            } finally {
+                values[0] = null;
+                values[1] = null;
+            }
+        }
+
+        String legacy(String ip, String source) {
+            String result = legacy;
+            if (hasIp) {
+                result = result.replace(IP_MARKER, ip);
+            }
+            if (hasSource) {
+                result = result.replace(SOURCE_MARKER, source);
+            }
+            return result;
+        }
+    }
+}
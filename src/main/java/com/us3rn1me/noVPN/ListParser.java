@@ -0,0 +1,331 @@
+package com.us3rn1me.noVPN;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming, byte-level parser for downloaded IP lists.
+ *
+ * Input is consumed in chunks straight from the response stream and fed
+ * through a small per-line state machine, so nothing is decoded into Strings
+ * and nothing is allocated per line. Recognized lines, after trimming:
+ * <ul>
+ *   <li>{@code #} or {@code ;} comments, which are skipped</li>
+ *   <li>IPv4 {@code a.b.c.d}, {@code a.b.c.d:port} and {@code a.b.c.d/nn}</li>
+ *   <li>IPv6 addresses and CIDRs, optionally bracketed with a port, as in
+ *       {@code [addr]:port} or {@code [addr]/nn}</li>
+ *   <li>JSON lines starting with {@code {}, a quote, or a {@code [} that is
+ *       not followed by a hex digit or {@code :}, from which every quoted
+ *       dotted quad is taken (e.g. monosans' {@code "host"} fields)</li>
+ * </ul>
+ * Anything else is ignored.
+ */
+public final class ListParser {
+
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    // Longest token worth parsing: a full IPv6 CIDR with zone and port fits easily.
+    private static final int MAX_TOKEN = 96;
+
+    private static final int LINE_START = 0;
+    private static final int SKIP_LINE = 1;
+    private static final int TOKEN = 2;
+    private static final int JSON = 3;
+    private static final int JSON_STRING = 4;
+    private static final int JSON_ESCAPE = 5;
+    // After a '[' at line start: a bracketed IPv6 address or a JSON array
+    private static final int BRACKET = 6;
+
+    private final LookupIndex.Segment.Builder segment;
+    private final Token token = new Token();
+    private final long[] ipv6 = new long[2];
+    private int state = LINE_START;
+
+    private ListParser(LookupIndex.Segment.Builder segment) {
+        this.segment = segment;
+    }
+
+    /** Parses the whole stream into {@code segment}. The stream is not closed. */
+    public static void parse(InputStream in, LookupIndex.Segment.Builder segment) throws IOException {
+        ListParser parser = new ListParser(segment);
+        byte[] chunk = new byte[CHUNK_BYTES];
+        int read;
+        while ((read = in.read(chunk)) >= 0) {
+            parser.feed(chunk, 0, read);
+        }
+        parser.finish();
+    }
+
+    /** Parses the remaining bytes of {@code buffer} into {@code segment}. */
+    public static void parse(ByteBuffer buffer, LookupIndex.Segment.Builder segment) {
+        ListParser parser = new ListParser(segment);
+        if (buffer.hasArray()) {
+            parser.feed(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else {
+            byte[] chunk = new byte[Math.min(CHUNK_BYTES, buffer.remaining())];
+            while (buffer.hasRemaining()) {
+                int length = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, length);
+                parser.feed(chunk, 0, length);
+            }
+        }
+        parser.finish();
+    }
+
+    private void feed(byte[] bytes, int offset, int length) {
+        Token token = this.token;
+        int state = this.state;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            byte c = bytes[i];
+            switch (state) {
+                case LINE_START -> {
+                    if (c <= ' ')
+                        continue;
+                    if (c == '#' || c == ';') {
+                        state = SKIP_LINE;
+                    } else if (c == '"') {
+                        token.reset();
+                        state = JSON_STRING;
+                    } else if (c == '{') {
+                        state = JSON;
+                    } else if (c == '[') {
+                        state = BRACKET;
+                    } else {
+                        token.reset();
+                        token.append(c);
+                        state = TOKEN;
+                    }
+                }
+                case BRACKET -> {
+                    if (isHexDigit(c) || c == ':') {
+                        token.reset();
+                        token.append((byte) '[');
+                        token.append(c);
+                        state = TOKEN;
+                    } else if (c == '\n') {
+                        state = LINE_START;
+                    } else if (c == '"') {
+                        token.reset();
+                        state = JSON_STRING;
+                    } else {
+                        state = JSON;
+                    }
+                }
+                case SKIP_LINE -> {
+                    if (c == '\n') {
+                        state = LINE_START;
+                    }
+                }
+                case TOKEN -> {
+                    if (c == '\n') {
+                        parseToken();
+                        state = LINE_START;
+                    } else {
+                        token.append(c);
+                    }
+                }
+                case JSON -> {
+                    if (c == '\n') {
+                        state = LINE_START;
+                    } else if (c == '"') {
+                        token.reset();
+                        state = JSON_STRING;
+                    }
+                }
+                case JSON_STRING -> {
+                    if (c == '"') {
+                        parseJsonString();
+                        state = JSON;
+                    } else if (c == '\\') {
+                        state = JSON_ESCAPE;
+                    } else if (c == '\n') {
+                        state = LINE_START;
+                    } else {
+                        token.append(c);
+                    }
+                }
+                default -> {
+                    // The escaped byte can never be part of an address.
+                    token.overflow = true;
+                    state = JSON_STRING;
+                }
+            }
+        }
+
+        this.state = state;
+    }
+
+    private void finish() {
+        if (state == TOKEN) {
+            parseToken();
+        }
+        state = LINE_START;
+    }
+
+    private void parseJsonString() {
+        if (token.overflow)
+            return;
+
+        long ip = IpAddresses.parseIpv4(token, 0, token.length);
+        if (ip >= 0)
+            segment.addIpv4((int) ip);
+    }
+
+    private void parseToken() {
+        Token token = this.token;
+        if (token.overflow)
+            return;
+
+        int length = token.length;
+        while (length > 0 && token.bytes[length - 1] <= ' ') {
+            length--;
+        }
+
+        // IPv6: [address], [address]:port or [address]/nnn
+        if (token.bytes[0] == '[') {
+            parseIpv6(1, length, true);
+            return;
+        }
+
+        // IPv4: a.b.c.d, a.b.c.d:port or a.b.c.d/nn
+        int separator = 0;
+        while (separator < length && token.bytes[separator] != ':' && token.bytes[separator] != '/') {
+            separator++;
+        }
+        long ip = IpAddresses.parseIpv4(token, 0, separator);
+        if (ip >= 0) {
+            if (separator == length) {
+                segment.addIpv4((int) ip);
+            } else if (token.bytes[separator] == ':') {
+                int digits = token.digits(separator + 1, length);
+                if (digits > 0 && separator + 1 + digits == length)
+                    segment.addIpv4((int) ip);
+            } else {
+                int digits = token.digits(separator + 1, length);
+                if (digits >= 1 && digits <= 2 && separator + 1 + digits == length) {
+                    int prefix = token.number(separator + 1, length);
+                    if (prefix <= 32)
+                        segment.addIpv4Range((int) ip, prefix);
+                }
+            }
+            return;
+        }
+
+        // IPv6: address, address]:port or address/nnn
+        parseIpv6(0, length, false);
+    }
+
+    /**
+     * Parses an IPv6 address or CIDR starting at {@code start}. A bracketed
+     * address must be closed with {@code ]}, which may be followed by a port.
+     */
+    private void parseIpv6(int start, int length, boolean bracketed) {
+        Token token = this.token;
+        int addressEnd = start;
+        while (addressEnd < length && isIpv6Char(token.bytes[addressEnd])) {
+            addressEnd++;
+        }
+        int p = addressEnd;
+        if (bracketed && (p == length || token.bytes[p] != ']'))
+            return;
+        if (p < length && token.bytes[p] == ']') {
+            p++;
+            if (p < length && token.bytes[p] == ':') {
+                int digits = token.digits(++p, length);
+                if (digits == 0)
+                    return;
+                p += digits;
+            }
+        }
+        int prefix = -1;
+        if (p < length && token.bytes[p] == '/') {
+            int digits = token.digits(++p, length);
+            if (digits < 1 || digits > 3 || p + digits != length)
+                return;
+            prefix = token.number(p, length);
+            p = length;
+        }
+        if (p != length || !IpAddresses.parseIpv6(token, start, addressEnd, ipv6))
+            return;
+
+        if (prefix < 0) {
+            segment.addIpv6(ipv6[0], ipv6[1]);
+        } else if (prefix <= 128) {
+            segment.addIpv6Range(ipv6[0], ipv6[1], prefix);
+        }
+    }
+
+    private static boolean isIpv6Char(byte c) {
+        return isHexDigit(c) || c == ':' || c == '.' || c == '%';
+    }
+
+    private static boolean isHexDigit(byte c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * A reusable, fixed-size ASCII token exposed as a {@link CharSequence} so
+     * the {@link IpAddresses} parsers can read it in place.
+     */
+    private static final class Token implements CharSequence {
+
+        final byte[] bytes = new byte[MAX_TOKEN];
+        int length;
+        boolean overflow;
+
+        void reset() {
+            length = 0;
+            overflow = false;
+        }
+
+        void append(byte c) {
+            if (length == MAX_TOKEN) {
+                overflow = true;
+            } else {
+                bytes[length++] = c;
+            }
+        }
+
+        /** Returns how many ASCII digits start at {@code from}, stopping at {@code to}. */
+        int digits(int from, int to) {
+            int i = from;
+            while (i < to && bytes[i] >= '0' && bytes[i] <= '9') {
+                i++;
+            }
+            return i - from;
+        }
+
+        /** Parses the run of digits starting at {@code from}. */
+        int number(int from, int to) {
+            int value = 0;
+            for (int i = from; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                value = value * 10 + (bytes[i] - '0');
+            }
+            return value;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.us3rn1me.noVPN;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lists read from the local disk: {@code lists} entries of the form
+ * {@code file:path}, where the path names a single file or a directory whose
+ * files together make up one source. Relative paths are resolved against the
+ * plugin's data folder; {@code file:///abs/path} URIs work as well.
+ *
+ * Every file is parsed into its own {@link LookupIndex.Segment} and kept
+ * together with the modification time and size it was read at, so re-reading
+ * a directory only parses the files that changed and merges the rest from
+ * memory. Small files are read whole, large ones are streamed through a
+ * fixed-size buffer, and {@code .gz} files are inflated on the fly. Nothing is
+ * memory-mapped: the admin edits these files, and a mapped file cannot be
+ * replaced or deleted on Windows, nor safely truncated while it is parsed.
+ *
+ * {@link #watch} registers the files' directories with a {@link WatchService}
+ * and reports changed entries after a short debounce, so an edit is picked up
+ * well within a second without waiting for the next refresh.
+ */
+public final class LocalSources {
+
+    private static final String PREFIX = "file:";
+
+    // Files at least this large are streamed instead of read onto the heap whole.
+    private static final long STREAM_THRESHOLD_BYTES = 1 << 20;
+
+    // How long the watcher waits for a burst of events (e.g. an editor's
+    // write-rename-delete) to settle before reloading.
+    private static final long DEBOUNCE_MILLIS = 250;
+
+    /**
+     * The result of {@link #load}.
+     *
+     * @param segment   the combined entries of the source
+     * @param bytes     bytes read from disk; 0 when nothing was re-parsed
+     * @param unchanged whether no file changed since the last load
+     */
+    public record Loaded(LookupIndex.Segment segment, long bytes, boolean unchanged) {
+    }
+
+    /** One parsed file, with the attributes it had when it was read. */
+    private record ParsedFile(Path path, FileTime modified, long size, LookupIndex.Segment segment) {
+
+        boolean matches(BasicFileAttributes attributes) {
+            return modified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+    }
+
+    /** The files an entry was last built from, and the segment they made up. */
+    private record Combined(List<ParsedFile> files, LookupIndex.Segment segment) {
+    }
+
+    /**
+     * The directories watched for a set of entries.
+     *
+     * @param directories each watched directory, with the entries whose events it reports
+     * @param names       for an entry that is not an existing directory, the one name in
+     *                    its watched directory that matters to it
+     */
+    private record WatchPlan(Map<Path, Set<String>> directories, Map<String, Path> names) {
+    }
+
+    private final Path dataDirectory;
+    private final Logger logger;
+
+    private final Map<String, Combined> loaded = new ConcurrentHashMap<>();
+
+    // The current watch; guarded by this
+    private WatchService watchService;
+    private Thread watchThread;
+    private Set<String> watched = Set.of();
+    private WatchPlan plan;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    public LocalSources(Path dataDirectory, Logger logger) {
+        this.dataDirectory = dataDirectory;
+        this.logger = logger;
+    }
+
+    /** Returns whether a {@code lists} entry names a local file or directory. */
+    public static boolean isLocal(String entry) {
+        return entry.regionMatches(true, 0, PREFIX, 0, PREFIX.length());
+    }
+
+    /** Resolves a {@code file:} entry to a path. */
+    Path resolve(String entry) {
+        if (entry.regionMatches(true, 0, PREFIX + "//", 0, PREFIX.length() + 2))
+            return Path.of(URI.create(entry));
+
+        Path path = Path.of(entry.substring(PREFIX.length()));
+        if (!path.isAbsolute() && dataDirectory != null) {
+            path = dataDirectory.resolve(path);
+        }
+        return path.normalize();
+    }
+
+    // ------------------------------------------------------------------
+
+    /**
+     * Reads a local source, re-parsing only the files whose modification time
+     * or size changed since the previous call.
+     *
+     * @param source the entry's position in the source list
+     * @throws NoSuchFileException if the file or directory does not exist
+     */
+    public Loaded load(String entry, int source) throws IOException {
+        Path path = resolve(entry);
+        Combined previous = loaded.get(entry);
+        Map<Path, ParsedFile> cached = new HashMap<>();
+        if (previous != null) {
+            for (ParsedFile file : previous.files()) {
+                cached.put(file.path(), file);
+            }
+        }
+
+        List<ParsedFile> files = new ArrayList<>();
+        long bytes = 0;
+        boolean changed = previous == null;
+        for (Path file : listFiles(path)) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // Deleted since the directory was listed.
+                if (file.equals(path))
+                    throw e;
+                continue;
+            }
+
+            ParsedFile parsed = cached.get(file);
+            if (parsed == null || !parsed.matches(attributes)) {
+                parsed = new ParsedFile(file, attributes.lastModifiedTime(), attributes.size(),
+                        parse(file, attributes.size(), source));
+                bytes += attributes.size();
+                changed = true;
+            }
+            files.add(parsed);
+        }
+        if (!changed && files.size() == previous.files().size())
+            return new Loaded(previous.segment().withSource(source), 0, true);
+
+        LookupIndex.Segment segment;
+        if (files.size() == 1) {
+            segment = files.get(0).segment().withSource(source);
+        } else {
+            LookupIndex.Segment.Builder builder = new LookupIndex.Segment.Builder();
+            for (ParsedFile file : files) {
+                builder.addAll(file.segment());
+            }
+            segment = builder.build(source);
+        }
+        loaded.put(entry, new Combined(List.copyOf(files), segment));
+        return new Loaded(segment, bytes, false);
+    }
+
+    /** Forgets sources that are no longer configured. */
+    public void retain(Collection<String> entries) {
+        loaded.keySet().retainAll(entries);
+    }
+
+    /** Returns {@code path} itself, or the visible regular files in it in name order. */
+    private static List<Path> listFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            if (!Files.exists(path))
+                throw new NoSuchFileException(path.toString());
+            return List.of(path);
+        }
+        try (Stream<Path> children = Files.list(path)) {
+            return children
+                    .filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().startsWith("."))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static LookupIndex.Segment parse(Path file, long size, int source) throws IOException {
+        LookupIndex.Segment.Builder builder = new LookupIndex.Segment.Builder();
+        if (file.getFileName().toString().endsWith(".gz")) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file), 64 * 1024)) {
+                ListParser.parse(in, builder);
+            }
+        } else if (size >= STREAM_THRESHOLD_BYTES) {
+            try (InputStream in = Files.newInputStream(file)) {
+                ListParser.parse(in, builder);
+            }
+        } else {
+            ListParser.parse(ByteBuffer.wrap(Files.readAllBytes(file)), builder);
+        }
+        return builder.build(source);
+    }
+
+    // ------------------------------------------------------------------
+
+    /**
+     * Watches the given entries and calls {@code onChange} with an entry, on
+     * the watcher thread, whenever one of its files was created, modified or
+     * deleted. Replaces any previous watch unless it already covers the same
+     * directories; non-local entries are ignored.
+     *
+     * An entry that does not exist yet is watched through its nearest existing
+     * parent, and the watch follows along as the missing directories are
+     * created, so files added to them later are picked up too.
+     */
+    public synchronized void watch(List<String> entries, Consumer<String> onChange) {
+        Set<String> local = new LinkedHashSet<>();
+        for (String entry : entries) {
+            if (isLocal(entry)) {
+                local.add(entry);
+            }
+        }
+        WatchPlan next = plan(local);
+        if (next.equals(plan) && watchThread != null)
+            return;
+
+        close();
+        if (local.isEmpty())
+            return;
+
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            watchService = service;
+            watched = Set.copyOf(local);
+            register();
+            watchThread = Thread.ofPlatform().daemon().name("novpn-watch")
+                    .start(() -> pollEvents(service, onChange));
+        } catch (IOException e) {
+            logger.warning("NoVPN: Cannot watch local lists for changes: " + e.getMessage());
+        }
+    }
+
+    /** Stops watching for changes. */
+    public synchronized void close() {
+        if (watchService == null)
+            return;
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+        }
+        watchThread.interrupt();
+        watchService = null;
+        watchThread = null;
+        watched = Set.of();
+        plan = null;
+        keys.clear();
+    }
+
+    /**
+     * Works out which directories to watch: an existing directory entry is
+     * watched itself, anything else through its nearest existing parent, with
+     * only the next name on the way to it mattering there.
+     */
+    private WatchPlan plan(Set<String> entries) {
+        Map<Path, Set<String>> directories = new HashMap<>();
+        Map<String, Path> names = new HashMap<>();
+        for (String entry : entries) {
+            Path directory = resolve(entry).toAbsolutePath();
+            Path name = null;
+            while (directory != null && !Files.isDirectory(directory)) {
+                name = directory.getFileName();
+                directory = directory.getParent();
+            }
+            if (directory == null)
+                continue;
+            if (name != null) {
+                names.put(entry, name);
+            }
+            directories.computeIfAbsent(directory, key -> new HashSet<>()).add(entry);
+        }
+        return new WatchPlan(directories, names);
+    }
+
+    /**
+     * Registers the directories the watched entries need and drops the rest,
+     * until no directory on the way to an entry appeared in the meantime.
+     *
+     * @return the entries of the newly registered directories, whose files may
+     *         have changed before the watch saw them
+     */
+    private Set<String> register() {
+        Set<String> added = new LinkedHashSet<>();
+        WatchPlan next = plan(watched);
+        while (!next.equals(plan)) {
+            WatchPlan target = next;
+            keys.entrySet().removeIf(key -> {
+                if (target.directories().containsKey(key.getValue()))
+                    return false;
+                key.getKey().cancel();
+                return true;
+            });
+            for (Map.Entry<Path, Set<String>> directory : target.directories().entrySet()) {
+                if (keys.containsValue(directory.getKey()))
+                    continue;
+                try {
+                    keys.put(directory.getKey().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE),
+                            directory.getKey());
+                    added.addAll(directory.getValue());
+                } catch (IOException e) {
+                    logger.warning("NoVPN: Cannot watch " + directory.getKey() + " for changes: " + e.getMessage());
+                }
+            }
+            plan = target;
+            next = plan(watched);
+        }
+        return added;
+    }
+
+    private void pollEvents(WatchService service, Consumer<String> onChange) {
+        try {
+            while (true) {
+                Set<String> changed = new LinkedHashSet<>();
+                WatchKey key = service.take();
+                do {
+                    collect(service, key, changed);
+                    key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                for (String entry : changed) {
+                    try {
+                        onChange.accept(entry);
+                    } catch (RuntimeException e) {
+                        logger.warning("NoVPN: Failed to reload " + entry + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed by close().
+        }
+    }
+
+    private synchronized void collect(WatchService service, WatchKey key, Set<String> changed) {
+        List<WatchEvent<?>> events = key.pollEvents();
+        boolean valid = key.reset();
+        // Replaced by a later watch() in the meantime.
+        if (service != watchService)
+            return;
+
+        Path directory = keys.get(key);
+        Set<String> entries = directory == null ? Set.of() : plan.directories().get(directory);
+        // Re-plan when a directory on the way to an entry appears, or a watched one goes away.
+        boolean replan = !valid;
+        for (WatchEvent<?> event : events) {
+            for (String entry : entries) {
+                Path name = plan.names().get(entry);
+                boolean named = name != null && name.equals(event.context());
+                if (name == null || named || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    changed.add(entry);
+                }
+                if (named && event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                        && Files.isDirectory(directory.resolve(name))) {
+                    replan = true;
+                }
+            }
+        }
+        if (replan) {
+            changed.addAll(register());
+        }
+    }
+}
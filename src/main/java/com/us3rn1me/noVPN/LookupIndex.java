@@ -0,0 +1,881 @@
+package com.us3rn1me.noVPN;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, source-attributed lookup structure built from the per-source
+ * results of a refresh.
+ *
+ * Exact addresses and disjoint address ranges each carry the id of the set of
+ * sources that listed them, so a single lookup answers both "is it listed"
+ * and "by which lists". Source sets are interned bitmasks: identical
+ * combinations of sources share one entry, and their sizes are precomputed so
+ * threshold checks cost nothing extra.
+ *
+ * IPv6 entries are /64 prefix ranges (see {@link Ipv6RangeSet}), looked up by
+ * the high half of the address; IPv4-mapped addresses are folded into the
+ * IPv4 tables. All bounds are stored with the sign bit flipped so that signed
+ * comparison matches unsigned address order.
+ *
+ * The tables are held as {@link IntBuffer}/{@link LongBuffer} views so that an
+ * index can be backed either by heap arrays (straight after a build) or by a
+ * memory-mapped {@link SnapshotFile} without copying anything onto the heap.
+ */
+public final class LookupIndex {
+
+    /** Returned by {@link #match(int)} when no source lists the address. */
+    public static final int NO_MATCH = -1;
+
+    private static final LookupIndex EMPTY = new LookupIndex(List.of(), new int[0], new int[0],
+            new int[0], new int[0], new int[0], new long[0], new long[0], new int[0],
+            new long[0], 1, new int[0], 0L);
+
+    // Rough per-entry cost of an address held as a String inside an immutable
+    // Set: String header + Latin-1 byte[] header + two table slots.
+    private static final int STRING_OBJECT_BYTES = 24;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int SET_SLOT_BYTES = 8;
+
+    /** The parsed contents of one source, tagged with its position in the source list. */
+    public record Segment(int source, Ipv4Set ips, Ipv4RangeSet ranges, Ipv6RangeSet ranges6) {
+
+        /** Returns this segment re-tagged for a different position in the source list. */
+        public Segment withSource(int source) {
+            return source == this.source ? this : new Segment(source, ips, ranges, ranges6);
+        }
+
+        /** Collects the entries parsed from one source. */
+        public static final class Builder {
+
+            private final Ipv4Set.Builder ips = new Ipv4Set.Builder();
+            private final Ipv4RangeSet.Builder ranges = new Ipv4RangeSet.Builder();
+            private final Ipv6RangeSet.Builder ranges6 = new Ipv6RangeSet.Builder();
+
+            public void addIpv4(int ip) {
+                ips.add(ip);
+            }
+
+            /** Adds an IPv6 address; IPv4-mapped addresses go to the IPv4 set. */
+            public void addIpv6(long high, long low) {
+                if (IpAddresses.isIpv4Mapped(high, low)) {
+                    ips.add((int) low);
+                } else {
+                    ranges6.addAddress(high);
+                }
+            }
+
+            /** Adds the IPv4 block {@code address/prefixLength}; host bits are ignored. */
+            public void addIpv4Range(int address, int prefixLength) {
+                int mask = prefixLength == 0 ? 0 : (0xFFFFFFFF << (32 - prefixLength));
+                ranges.add(address & mask, address | ~mask);
+            }
+
+            /**
+             * Adds the IPv6 block {@code high:low/prefixLength}, widened to whole
+             * /64 prefixes. IPv4-mapped blocks go to the IPv4 ranges.
+             */
+            public void addIpv6Range(long high, long low, int prefixLength) {
+                if (prefixLength >= 96 && IpAddresses.isIpv4Mapped(high, low)) {
+                    addIpv4Range((int) low, prefixLength - 96);
+                    return;
+                }
+                long mask = InetAddressRange.highMask(prefixLength);
+                ranges6.add(high & mask, high | ~mask);
+            }
+
+            public void addRange(InetAddressRange range) {
+                if (range.isIpv6()) {
+                    ranges6.add(range);
+                } else {
+                    ranges.add(range);
+                }
+            }
+
+            /** Adds every entry of an already built segment, e.g. one file of a directory source. */
+            public void addAll(Segment segment) {
+                for (int i = 0; i < segment.ips().size(); i++) {
+                    ips.add(segment.ips().get(i));
+                }
+                for (int i = 0; i < segment.ranges().size(); i++) {
+                    ranges.add(segment.ranges().first(i), segment.ranges().last(i));
+                }
+                for (int i = 0; i < segment.ranges6().size(); i++) {
+                    ranges6.add(segment.ranges6().firstHigh(i), segment.ranges6().lastHigh(i));
+                }
+            }
+
+            /** Returns the number of CIDR blocks added so far, before merging. */
+            public int rangeCount() {
+                return ranges.size() + ranges6.size();
+            }
+
+            public Segment build(int source) {
+                Ipv4RangeSet merged = ranges.build();
+                return new Segment(source, ips.build(merged), merged, ranges6.build());
+            }
+        }
+    }
+
+    /**
+     * Details of a single lookup, used by {@code /novpn explain}. For IPv4,
+     * {@code first} and {@code last} are packed addresses in the low 32 bits;
+     * for IPv6 they are the first and last /64 prefixes.
+     */
+    public record Match(int set, boolean ipv6, boolean exact, long first, long last) {
+    }
+
+    private final List<String> sources;
+    private final IntBuffer ipKeys;
+    private final IntBuffer ipSets;
+    private final IntBuffer rangeStarts;
+    private final IntBuffer rangeEnds;
+    private final IntBuffer rangeSets;
+    private final LongBuffer v6Starts;
+    private final LongBuffer v6Ends;
+    private final IntBuffer v6Sets;
+    private final LongBuffer setWords;
+    private final int wordsPerSet;
+    private final IntBuffer setSizes;
+    private final long stringFootprintBytes;
+    private final boolean mapped;
+
+    private LookupIndex(List<String> sources, int[] ipKeys, int[] ipSets,
+            int[] rangeStarts, int[] rangeEnds, int[] rangeSets,
+            long[] v6Starts, long[] v6Ends, int[] v6Sets,
+            long[] setWords, int wordsPerSet, int[] setSizes, long stringFootprintBytes) {
+        this(sources, IntBuffer.wrap(ipKeys), IntBuffer.wrap(ipSets),
+                IntBuffer.wrap(rangeStarts), IntBuffer.wrap(rangeEnds), IntBuffer.wrap(rangeSets),
+                LongBuffer.wrap(v6Starts), LongBuffer.wrap(v6Ends), IntBuffer.wrap(v6Sets),
+                LongBuffer.wrap(setWords), wordsPerSet, IntBuffer.wrap(setSizes), stringFootprintBytes, false);
+    }
+
+    /** Creates an index over existing tables; used by {@link SnapshotFile}. */
+    LookupIndex(List<String> sources, IntBuffer ipKeys, IntBuffer ipSets,
+            IntBuffer rangeStarts, IntBuffer rangeEnds, IntBuffer rangeSets,
+            LongBuffer v6Starts, LongBuffer v6Ends, IntBuffer v6Sets,
+            LongBuffer setWords, int wordsPerSet, IntBuffer setSizes, long stringFootprintBytes,
+            boolean mapped) {
+        this.sources = sources;
+        this.ipKeys = ipKeys;
+        this.ipSets = ipSets;
+        this.rangeStarts = rangeStarts;
+        this.rangeEnds = rangeEnds;
+        this.rangeSets = rangeSets;
+        this.v6Starts = v6Starts;
+        this.v6Ends = v6Ends;
+        this.v6Sets = v6Sets;
+        this.setWords = setWords;
+        this.wordsPerSet = wordsPerSet;
+        this.setSizes = setSizes;
+        this.stringFootprintBytes = stringFootprintBytes;
+        this.mapped = mapped;
+    }
+
+    /** Returns the empty index. */
+    public static LookupIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Looks up a packed IPv4 address.
+     *
+     * @param ip packed IPv4 address
+     * @return the id of the set of sources listing the address, or
+     *         {@link #NO_MATCH}
+     */
+    public int match(int ip) {
+        int key = ip ^ Integer.MIN_VALUE;
+
+        int i = search(ipKeys, key);
+        if (i >= 0)
+            return ipSets.get(i);
+
+        int r = floor(rangeStarts, key);
+        if (r >= 0 && key <= rangeEnds.get(r))
+            return rangeSets.get(r);
+
+        return NO_MATCH;
+    }
+
+    /**
+     * Looks up a packed IPv6 address by its /64 prefix. IPv4-mapped addresses
+     * are looked up in the IPv4 tables instead.
+     *
+     * @return the id of the set of sources listing the address, or
+     *         {@link #NO_MATCH}
+     */
+    public int match(long high, long low) {
+        if (IpAddresses.isIpv4Mapped(high, low))
+            return match((int) low);
+
+        long key = high ^ Long.MIN_VALUE;
+        int r = floor(v6Starts, key);
+        if (r >= 0 && key <= v6Ends.get(r))
+            return v6Sets.get(r);
+
+        return NO_MATCH;
+    }
+
+    /**
+     * Like {@link #match(int)} but also reports whether the hit was an exact
+     * address or a range, and the bounds of that entry.
+     *
+     * @return the match details, or {@code null} if not listed
+     */
+    public Match explain(int ip) {
+        int key = ip ^ Integer.MIN_VALUE;
+
+        int i = search(ipKeys, key);
+        if (i >= 0)
+            return new Match(ipSets.get(i), false, true, ip & 0xFFFFFFFFL, ip & 0xFFFFFFFFL);
+
+        int r = floor(rangeStarts, key);
+        if (r >= 0 && key <= rangeEnds.get(r))
+            return new Match(rangeSets.get(r), false, false,
+                    (rangeStarts.get(r) ^ Integer.MIN_VALUE) & 0xFFFFFFFFL,
+                    (rangeEnds.get(r) ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+
+        return null;
+    }
+
+    /**
+     * Like {@link #match(long, long)} but also reports the /64 range that
+     * matched.
+     *
+     * @return the match details, or {@code null} if not listed
+     */
+    public Match explain(long high, long low) {
+        if (IpAddresses.isIpv4Mapped(high, low))
+            return explain((int) low);
+
+        long key = high ^ Long.MIN_VALUE;
+        int r = floor(v6Starts, key);
+        if (r >= 0 && key <= v6Ends.get(r))
+            return new Match(v6Sets.get(r), true, false,
+                    v6Starts.get(r) ^ Long.MIN_VALUE, v6Ends.get(r) ^ Long.MIN_VALUE);
+
+        return null;
+    }
+
+    /** Returns how many sources are in the given set (0 for {@link #NO_MATCH}). */
+    public int matchCount(int set) {
+        return set < 0 ? 0 : setSizes.get(set);
+    }
+
+    /** Returns the bitmask of sources in the given set, one bit per source index. */
+    public long[] sourceMask(int set) {
+        if (set < 0)
+            return new long[wordsPerSet];
+        long[] mask = new long[wordsPerSet];
+        setWords.get(set * wordsPerSet, mask);
+        return mask;
+    }
+
+    /** Returns the names of the sources in the given set, in source order. */
+    public List<String> sourcesOf(int set) {
+        List<String> names = new ArrayList<>();
+        if (set < 0)
+            return names;
+        int base = set * wordsPerSet;
+        for (int w = 0; w < wordsPerSet; w++) {
+            long bits = setWords.get(base + w);
+            while (bits != 0) {
+                names.add(sources.get(w * 64 + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
+        }
+        return names;
+    }
+
+    /** Returns the number of exact addresses stored. */
+    public int ipCount() {
+        return ipKeys.limit();
+    }
+
+    /** Returns the number of disjoint ranges stored. */
+    public int rangeCount() {
+        return rangeStarts.limit();
+    }
+
+    /** Returns the number of disjoint IPv6 /64 ranges stored. */
+    public int ipv6RangeCount() {
+        return v6Starts.limit();
+    }
+
+    /** Returns the number of distinct source combinations. */
+    public int setCount() {
+        return setSizes.limit();
+    }
+
+    /** Returns the approximate heap footprint of the exact-address table, in bytes. */
+    public long ipFootprintBytes() {
+        return 32 + 8L * ipKeys.limit();
+    }
+
+    /**
+     * Returns the approximate heap footprint the exact addresses would take as
+     * a {@code Set<String>}, for comparison in {@code /novpn info}.
+     */
+    public long stringFootprintBytes() {
+        return stringFootprintBytes;
+    }
+
+    /**
+     * Returns the approximate footprint of the whole index, in bytes. For a
+     * mapped index this lives in the page cache rather than on the heap.
+     */
+    public long footprintBytes() {
+        return ipFootprintBytes() + 48 + 12L * rangeStarts.limit()
+                + 48 + 20L * v6Starts.limit()
+                + 32 + 8L * setWords.limit() + 4L * setSizes.limit();
+    }
+
+    /** Returns whether the tables are served from a memory-mapped snapshot file. */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Flattens the IPv4 part of this index into a bitmap of every address
+     * listed by at least {@code minMatchingSources} sources, for the
+     * {@code bitmap} snapshot engine.
+     */
+    public Ipv4Bitmap toBitmap(int minMatchingSources) {
+        Ipv4Bitmap.Builder bitmap = new Ipv4Bitmap.Builder();
+        int ips = ipKeys.limit();
+        int ranges = rangeStarts.limit();
+        int i = 0;
+        int r = 0;
+        // Both tables are sorted by their biased keys; walk them in one pass.
+        while (i < ips || r < ranges) {
+            if (r == ranges || (i < ips && ipKeys.get(i) < rangeStarts.get(r))) {
+                if (setSizes.get(ipSets.get(i)) >= minMatchingSources) {
+                    bitmap.add(ipKeys.get(i) ^ Integer.MIN_VALUE);
+                }
+                i++;
+            } else {
+                if (setSizes.get(rangeSets.get(r)) >= minMatchingSources) {
+                    bitmap.add(rangeStarts.get(r) ^ Integer.MIN_VALUE, rangeEnds.get(r) ^ Integer.MIN_VALUE);
+                }
+                r++;
+            }
+        }
+        return bitmap.build();
+    }
+
+    List<String> sources() {
+        return sources;
+    }
+
+    IntBuffer ipKeys() {
+        return ipKeys.duplicate();
+    }
+
+    IntBuffer ipSets() {
+        return ipSets.duplicate();
+    }
+
+    IntBuffer rangeStarts() {
+        return rangeStarts.duplicate();
+    }
+
+    IntBuffer rangeEnds() {
+        return rangeEnds.duplicate();
+    }
+
+    IntBuffer rangeSets() {
+        return rangeSets.duplicate();
+    }
+
+    LongBuffer v6Starts() {
+        return v6Starts.duplicate();
+    }
+
+    LongBuffer v6Ends() {
+        return v6Ends.duplicate();
+    }
+
+    IntBuffer v6Sets() {
+        return v6Sets.duplicate();
+    }
+
+    LongBuffer setWords() {
+        return setWords.duplicate();
+    }
+
+    int wordsPerSet() {
+        return wordsPerSet;
+    }
+
+    IntBuffer setSizes() {
+        return setSizes.duplicate();
+    }
+
+    /** Returns the index of {@code key} in {@code sorted}, or a negative value. */
+    private static int search(IntBuffer sorted, int key) {
+        int lo = 0;
+        int hi = sorted.limit() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int value = sorted.get(mid);
+            if (value < key) {
+                lo = mid + 1;
+            } else if (value > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int floor(LongBuffer sorted, long key) {
+        int lo = 0;
+        int hi = sorted.limit() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid) <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi;
+    }
+
+    private static int floor(IntBuffer sorted, int key) {
+        int lo = 0;
+        int hi = sorted.limit() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid) <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi;
+    }
+
+    /** Returns the index of the last element {@code <= key} in {@code sorted[0, length)}, or -1. */
+    private static int floor(int[] sorted, int length, int key) {
+        int lo = 0;
+        int hi = length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi;
+    }
+
+    // ------------------------------------------------------------------
+
+    /**
+     * Merges per-source segments into a single attributed index.
+     *
+     * Overlapping ranges from different sources are split into disjoint
+     * pieces, each tagged with the union of the sources covering it, and
+     * adjacent pieces with the same sources are coalesced again. An exact
+     * address is only kept when it adds a source that its covering range
+     * does not already carry.
+     *
+     * @param sources  the configured source names, indexed by {@link Segment#source()}
+     * @param segments the parsed sources; failed sources are simply absent
+     */
+    public static LookupIndex build(List<String> sources, List<Segment> segments) {
+        if (sources.isEmpty() || segments.isEmpty())
+            return EMPTY;
+
+        SetTable sets = new SetTable((sources.size() + 63) >>> 6);
+        RangeTable ranges = buildRanges(segments, sets);
+        Range6Table ranges6 = buildRanges6(segments, sets);
+
+        // Each segment's addresses are already sorted, so a k-way merge yields
+        // every address in order with all of its sources next to each other.
+        int k = segments.size();
+        int[] cursor = new int[k];
+        MergeHeap heap = new MergeHeap(k);
+        int total = 0;
+        for (int s = 0; s < k; s++) {
+            Ipv4Set ips = segments.get(s).ips();
+            if (ips.size() > 0) {
+                heap.add(s, ips.key(0), 0);
+                total += ips.size();
+            }
+        }
+
+        int[] ipKeys = new int[total];
+        int[] ipSets = new int[total];
+        int count = 0;
+        long[] scratch = new long[sets.wordsPerSet];
+        long stringBytes = 0;
+
+        while (!heap.isEmpty()) {
+            int key = (int) heap.topKey();
+            Arrays.fill(scratch, 0L);
+            while (!heap.isEmpty() && (int) heap.topKey() == key) {
+                int s = heap.top();
+                Segment segment = segments.get(s);
+                int source = segment.source();
+                scratch[source >>> 6] |= 1L << source;
+
+                if (++cursor[s] < segment.ips().size()) {
+                    heap.replaceTop(segment.ips().key(cursor[s]), 0);
+                } else {
+                    heap.removeTop();
+                }
+            }
+
+            int r = floor(ranges.starts, ranges.size, key);
+            int covering = r >= 0 && key <= ranges.ends[r] ? ranges.sets[r] : NO_MATCH;
+            if (covering != NO_MATCH) {
+                sets.orInto(covering, scratch);
+            }
+
+            int set = sets.intern(scratch);
+            if (set == covering)
+                continue;
+
+            ipKeys[count] = key;
+            ipSets[count] = set;
+            count++;
+
+            int textBytes = ARRAY_HEADER_BYTES + IpAddresses.ipv4TextLength(key ^ Integer.MIN_VALUE);
+            stringBytes += STRING_OBJECT_BYTES + ((textBytes + 7) & ~7) + SET_SLOT_BYTES;
+        }
+
+        return new LookupIndex(List.copyOf(sources),
+                Arrays.copyOf(ipKeys, count), Arrays.copyOf(ipSets, count),
+                Arrays.copyOf(ranges.starts, ranges.size), Arrays.copyOf(ranges.ends, ranges.size),
+                Arrays.copyOf(ranges.sets, ranges.size),
+                Arrays.copyOf(ranges6.starts, ranges6.size), Arrays.copyOf(ranges6.ends, ranges6.size),
+                Arrays.copyOf(ranges6.sets, ranges6.size),
+                sets.words(), sets.wordsPerSet, sets.sizes(), stringBytes);
+    }
+
+    private static RangeTable buildRanges(List<Segment> segments, SetTable sets) {
+        // A segment's ranges are sorted and disjoint, so its boundary events
+        // (start0, end0 + 1, start1, ...) are increasing; merge them k ways
+        // and sweep, tracking which sources are open.
+        int k = segments.size();
+        int[] cursor = new int[k];
+        MergeHeap heap = new MergeHeap(k);
+        int total = 0;
+        for (int s = 0; s < k; s++) {
+            int size = segments.get(s).ranges().size();
+            if (size > 0) {
+                heap.add(s, event(segments.get(s), 0), 0);
+                total += size;
+            }
+        }
+
+        RangeTable table = new RangeTable(total * 2);
+        long[] active = new long[sets.wordsPerSet];
+        int activeCount = 0;
+
+        while (!heap.isEmpty()) {
+            long position = heap.topKey();
+            while (!heap.isEmpty() && heap.topKey() == position) {
+                int s = heap.top();
+                Segment segment = segments.get(s);
+                int source = segment.source();
+                if ((cursor[s] & 1) == 0) {
+                    active[source >>> 6] |= 1L << source;
+                    activeCount++;
+                } else {
+                    active[source >>> 6] &= ~(1L << source);
+                    activeCount--;
+                }
+
+                if (++cursor[s] < segment.ranges().size() * 2) {
+                    heap.replaceTop(event(segment, cursor[s]), 0);
+                } else {
+                    heap.removeTop();
+                }
+            }
+
+            if (activeCount > 0 && !heap.isEmpty()) {
+                long next = heap.topKey();
+                table.append((int) position ^ Integer.MIN_VALUE, (int) (next - 1) ^ Integer.MIN_VALUE,
+                        sets.intern(active));
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * Returns the unsigned position of a segment's {@code event}-th IPv4 range
+     * boundary: a range start, or one past a range end.
+     */
+    private static long event(Segment segment, int event) {
+        Ipv4RangeSet ranges = segment.ranges();
+        return (event & 1) == 0
+                ? ranges.first(event >> 1) & 0xFFFFFFFFL
+                : (ranges.last(event >> 1) & 0xFFFFFFFFL) + 1;
+    }
+
+    private static Range6Table buildRanges6(List<Segment> segments, SetTable sets) {
+        // Every segment's IPv6 ranges are already sorted and disjoint, so its
+        // events (start0, end0, start1, end1, ...) are in order. A k-way merge
+        // over the segments yields all events sorted, starts before ends.
+        int k = segments.size();
+        int[] cursor = new int[k];
+        MergeHeap heap = new MergeHeap(k);
+        int total = 0;
+        for (int s = 0; s < k; s++) {
+            int size = segments.get(s).ranges6().size();
+            if (size > 0) {
+                heap.add(s, event6(segments.get(s), 0), 0);
+                total += size;
+            }
+        }
+
+        Range6Table table = new Range6Table(total * 2);
+        long[] active = new long[sets.wordsPerSet];
+        int activeCount = 0;
+        long from = 0;
+        boolean exhausted = false;
+
+        while (!heap.isEmpty()) {
+            int s = heap.top();
+            Segment segment = segments.get(s);
+            long position = heap.topKey();
+            int source = segment.source();
+
+            if ((cursor[s] & 1) == 0) {
+                if (activeCount > 0 && from < position) {
+                    table.append(from, position - 1, sets.intern(active));
+                }
+                active[source >>> 6] |= 1L << source;
+                activeCount++;
+                from = position;
+            } else {
+                if (!exhausted && from <= position) {
+                    table.append(from, position, sets.intern(active));
+                }
+                active[source >>> 6] &= ~(1L << source);
+                activeCount--;
+                exhausted = position == Long.MAX_VALUE;
+                from = position + 1;
+            }
+
+            if (++cursor[s] < segment.ranges6().size() * 2) {
+                heap.replaceTop(event6(segment, cursor[s]), cursor[s] & 1);
+            } else {
+                heap.removeTop();
+            }
+        }
+
+        return table;
+    }
+
+    /** Returns the biased position of a segment's {@code event}-th IPv6 range boundary. */
+    private static long event6(Segment segment, int event) {
+        Ipv6RangeSet ranges = segment.ranges6();
+        long high = (event & 1) == 0 ? ranges.firstHigh(event >> 1) : ranges.lastHigh(event >> 1);
+        return high ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Binary min-heap of segment indexes ordered by a {@code long} key and then
+     * a small tie-breaking rank, used for k-way merges without boxing.
+     */
+    private static final class MergeHeap {
+
+        private final long[] keys;
+        private final int[] ranks;
+        private final int[] heap;
+        private int size;
+
+        MergeHeap(int segments) {
+            keys = new long[segments];
+            ranks = new int[segments];
+            heap = new int[segments];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int top() {
+            return heap[0];
+        }
+
+        long topKey() {
+            return keys[heap[0]];
+        }
+
+        void add(int segment, long key, int rank) {
+            keys[segment] = key;
+            ranks[segment] = rank;
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(segment, heap[parent]))
+                    break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = segment;
+        }
+
+        /** Re-keys the top segment after its cursor advanced. */
+        void replaceTop(long key, int rank) {
+            int segment = heap[0];
+            keys[segment] = key;
+            ranks[segment] = rank;
+            siftDown(segment);
+        }
+
+        void removeTop() {
+            if (--size > 0) {
+                siftDown(heap[size]);
+            }
+        }
+
+        private void siftDown(int segment) {
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && less(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!less(heap[child], segment))
+                    break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = segment;
+        }
+
+        private boolean less(int a, int b) {
+            return keys[a] < keys[b] || (keys[a] == keys[b] && ranks[a] < ranks[b]);
+        }
+    }
+
+    /** Growable parallel arrays of disjoint ranges, coalescing neighbours with the same set. */
+    private static final class RangeTable {
+
+        int[] starts;
+        int[] ends;
+        int[] sets;
+        int size;
+
+        RangeTable(int capacity) {
+            starts = new int[capacity];
+            ends = new int[capacity];
+            sets = new int[capacity];
+        }
+
+        void append(int start, int end, int set) {
+            if (size > 0 && sets[size - 1] == set && ends[size - 1] + 1 == start) {
+                ends[size - 1] = end;
+                return;
+            }
+            starts[size] = start;
+            ends[size] = end;
+            sets[size] = set;
+            size++;
+        }
+    }
+
+    /** The IPv6 counterpart of {@link RangeTable}, over biased /64 prefixes. */
+    private static final class Range6Table {
+
+        long[] starts;
+        long[] ends;
+        int[] sets;
+        int size;
+
+        Range6Table(int capacity) {
+            starts = new long[capacity];
+            ends = new long[capacity];
+            sets = new int[capacity];
+        }
+
+        void append(long start, long end, int set) {
+            if (size > 0 && sets[size - 1] == set && ends[size - 1] + 1 == start) {
+                ends[size - 1] = end;
+                return;
+            }
+            starts[size] = start;
+            ends[size] = end;
+            sets[size] = set;
+            size++;
+        }
+    }
+
+    /** Interns source bitmasks so every distinct combination gets one id. */
+    private static final class SetTable {
+
+        final int wordsPerSet;
+        private final Map<Key, Integer> ids = new HashMap<>();
+        private final List<long[]> masks = new ArrayList<>();
+
+        SetTable(int wordsPerSet) {
+            this.wordsPerSet = wordsPerSet;
+        }
+
+        int intern(long[] mask) {
+            Integer id = ids.get(new Key(mask));
+            if (id != null)
+                return id;
+
+            long[] copy = mask.clone();
+            int next = masks.size();
+            masks.add(copy);
+            ids.put(new Key(copy), next);
+            return next;
+        }
+
+        void orInto(int set, long[] target) {
+            long[] mask = masks.get(set);
+            for (int w = 0; w < wordsPerSet; w++) {
+                target[w] |= mask[w];
+            }
+        }
+
+        long[] words() {
+            long[] words = new long[masks.size() * wordsPerSet];
+            for (int i = 0; i < masks.size(); i++) {
+                System.arraycopy(masks.get(i), 0, words, i * wordsPerSet, wordsPerSet);
+            }
+            return words;
+        }
+
+        int[] sizes() {
+            int[] sizes = new int[masks.size()];
+            for (int i = 0; i < masks.size(); i++) {
+                for (long word : masks.get(i)) {
+                    sizes[i] += Long.bitCount(word);
+                }
+            }
+            return sizes;
+        }
+
+        private record Key(long[] mask) {
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof Key other && Arrays.equals(mask, other.mask);
+            }
+
+            @Override
+            public int hashCode() {
+                return Arrays.hashCode(mask);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.us3rn1me.noVPN;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime counters for login checks and list refreshes, shown by
+ * {@code /novpn stats}.
+ *
+ * Login counters are {@link LongAdder}s, so a join storm spread over many
+ * threads never contends on a single cache line. Lookup latency goes into a
+ * histogram with power-of-two nanosecond buckets, which is precise enough to
+ * tell a 100 ns lookup from a 10 µs one and costs one increment per check.
+ */
+public final class Metrics {
+
+    /**
+     * The outcome of the latest fetch of one source.
+     *
+     * @param fetchNanos  wall time of the download and parse
+     * @param bytes       body bytes read; 0 when the source answered 304
+     * @param entries     addresses and CIDR blocks parsed from the body
+     * @param notModified whether the cached copy was reused
+     * @param failed      whether the latest fetch failed
+     * @param lastError   the most recent failure, kept after later successes,
+     *                    or {@code null} if the source never failed
+     */
+    public record SourceStats(long fetchNanos, long bytes, int entries, boolean notModified,
+                              boolean failed, String lastError) {
+    }
+
+    // Bucket i counts lookups that took less than 2^i ns; the last one is open-ended.
+    static final int LATENCY_BUCKETS = 40;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder bypasses = new LongAdder();
+    private final LongAdder[] latency = new LongAdder[LATENCY_BUCKETS];
+    private final LongAdder latencySum = new LongAdder();
+
+    private final LongAdder refreshes = new LongAdder();
+    private volatile long lastRefreshMillis;
+    private volatile int lastRefreshFailedSources;
+
+    private final Map<String, SourceStats> sources = new ConcurrentHashMap<>();
+
+    public Metrics() {
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            latency[i] = new LongAdder();
+        }
+    }
+
+    // ------------------------------------------------------------------
+
+    /** Counts a login that was checked against the lists. */
+    public void recordCheck() {
+        checks.increment();
+    }
+
+    /** Counts a login that was refused. */
+    public void recordBlock() {
+        blocks.increment();
+    }
+
+    /** Counts a listed login let through by the bypass permission. */
+    public void recordBypass() {
+        bypasses.increment();
+    }
+
+    /** Adds one lookup of {@code nanos} to the latency histogram. */
+    public void recordLookup(long nanos) {
+        int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, nanos));
+        latency[Math.min(bucket, LATENCY_BUCKETS - 1)].increment();
+        latencySum.add(nanos);
+    }
+
+    /** Records a completed round of downloads in which {@code failedSources} sources failed. */
+    public void recordRefresh(int failedSources) {
+        refreshes.increment();
+        lastRefreshFailedSources = failedSources;
+        lastRefreshMillis = System.currentTimeMillis();
+    }
+
+    /** Records a successful fetch of {@code url}. */
+    public void recordFetch(String url, long fetchNanos, long bytes, int entries, boolean notModified) {
+        sources.compute(url, (key, previous) -> new SourceStats(fetchNanos, bytes, entries, notModified,
+                false, previous == null ? null : previous.lastError()));
+    }
+
+    /** Records a failed fetch of {@code url}, keeping the figures of its last success. */
+    public void recordFetchError(String url, long fetchNanos, String error) {
+        sources.compute(url, (key, previous) -> previous == null
+                ? new SourceStats(fetchNanos, 0, 0, false, true, error)
+                : new SourceStats(fetchNanos, previous.bytes(), previous.entries(), previous.notModified(),
+                true, error));
+    }
+
+    /** Drops the stats of sources that are no longer configured. */
+    public void retainSources(Collection<String> urls) {
+        sources.keySet().retainAll(urls);
+    }
+
+    // ------------------------------------------------------------------
+
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    public long getBlocks() {
+        return blocks.sum();
+    }
+
+    public long getBypasses() {
+        return bypasses.sum();
+    }
+
+    /** Returns the number of lookups in the latency histogram. */
+    public long getLookups() {
+        long total = 0;
+        for (LongAdder bucket : latency) {
+            total += bucket.sum();
+        }
+        return total;
+    }
+
+    /** Returns the summed duration of all recorded lookups, in nanoseconds. */
+    public long getLookupSumNanos() {
+        return latencySum.sum();
+    }
+
+    /**
+     * Returns the lookup-latency histogram: element {@code i} counts lookups
+     * that took less than {@code 2^i} ns, the last element everything slower.
+     */
+    public long[] getLookupHistogram() {
+        long[] counts = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            counts[i] = latency[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Returns an upper bound for the given latency percentile, in nanoseconds,
+     * or {@code -1} if nothing was recorded yet.
+     *
+     * @param percentile between 0 and 100
+     */
+    public long getLookupPercentileNanos(double percentile) {
+        long[] counts = getLookupHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0)
+            return -1;
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return 1L << i;
+        }
+        return 1L << (LATENCY_BUCKETS - 1);
+    }
+
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /** Returns the wall-clock time of the last refresh, or 0 if none ran yet. */
+    public long getLastRefreshMillis() {
+        return lastRefreshMillis;
+    }
+
+    public int getLastRefreshFailedSources() {
+        return lastRefreshFailedSources;
+    }
+
+    /** Returns the stats of every source fetched so far, by URL. */
+    public Map<String, SourceStats> getSourceStats() {
+        return Map.copyOf(sources);
+    }
+
+    /** Returns the stats of every given source in order, skipping those not fetched yet. */
+    public List<Map.Entry<String, SourceStats>> getSourceStats(List<String> urls) {
+        List<Map.Entry<String, SourceStats>> result = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            SourceStats stats = sources.get(url);
+            if (stats != null) {
+                result.add(Map.entry(url, stats));
+            }
+        }
+        return result;
+    }
+}
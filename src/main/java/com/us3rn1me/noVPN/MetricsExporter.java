@@ -0,0 +1,190 @@
+package com.us3rn1me.noVPN;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Serves {@link Metrics} and the state of the current snapshot at
+ * {@code /metrics} in the OpenMetrics text format, for Prometheus.
+ *
+ * The endpoint is off unless {@code metrics-port} is set. It runs on the
+ * JDK's built-in {@link HttpServer} with a single dispatcher thread, and a
+ * scrape only sums the counters and reads the published snapshot, so
+ * scraping every few seconds never touches the login path.
+ */
+public final class MetricsExporter {
+
+    private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    // Histogram buckets exported, as powers of two nanoseconds: 64 ns to ~1 s.
+    private static final int FIRST_BUCKET = 6;
+    private static final int LAST_BUCKET = 30;
+
+    private final IpListManager ipListManager;
+    private final Logger logger;
+
+    private HttpServer server;
+
+    public MetricsExporter(IpListManager ipListManager, Logger logger) {
+        this.ipListManager = ipListManager;
+        this.logger = logger;
+    }
+
+    /**
+     * Starts the endpoint on the configured address and port. Does nothing if
+     * {@code metrics-port} is 0; a port that cannot be bound is logged and
+     * otherwise ignored.
+     */
+    public void start(Config config) {
+        int port = config.getMetricsPort();
+        if (port <= 0)
+            return;
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(config.getMetricsAddress(), port), 0);
+            server.createContext("/metrics", this::handle);
+            server.start();
+            logger.info("NoVPN: Serving metrics on http://" + config.getMetricsAddress() + ":" + port + "/metrics");
+        } catch (IOException e) {
+            server = null;
+            logger.warning("NoVPN: Could not start the metrics endpoint on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    /** Stops the endpoint, if it is running. */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    // ------------------------------------------------------------------
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /** Renders every metric as an OpenMetrics exposition. */
+    String render() {
+        Metrics metrics = ipListManager.getMetrics();
+        StringBuilder out = new StringBuilder(4096);
+
+        counter(out, "novpn_checks", "Logins checked against the lists.", metrics.getChecks());
+        counter(out, "novpn_blocks", "Logins refused.", metrics.getBlocks());
+        counter(out, "novpn_bypasses", "Listed logins let through by the bypass permission.",
+                metrics.getBypasses());
+
+        long[] histogram = metrics.getLookupHistogram();
+        header(out, "novpn_lookup_seconds", "histogram", "Latency of login lookups.");
+        long cumulative = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            cumulative += histogram[i];
+            if (i >= FIRST_BUCKET && i <= LAST_BUCKET) {
+                out.append("novpn_lookup_seconds_bucket{le=\"").append(number((1L << i) / 1e9)).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+        }
+        out.append("novpn_lookup_seconds_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append("novpn_lookup_seconds_sum ").append(number(metrics.getLookupSumNanos() / 1e9)).append('\n');
+        out.append("novpn_lookup_seconds_count ").append(cumulative).append('\n');
+
+        long snapshotMillis = ipListManager.getSnapshotMillis();
+        if (snapshotMillis > 0) {
+            gauge(out, "novpn_snapshot_age_seconds", "Time since the current snapshot was built.",
+                    number((System.currentTimeMillis() - snapshotMillis) / 1e3));
+        }
+        gauge(out, "novpn_snapshot_bytes", "Approximate footprint of the current snapshot.",
+                String.valueOf(ipListManager.getFootprintBytes()));
+        if (ipListManager.getBitmapFootprintBytes() >= 0) {
+            gauge(out, "novpn_bitmap_bytes", "Heap footprint of the bitmap engine.",
+                    String.valueOf(ipListManager.getBitmapFootprintBytes()));
+        }
+        header(out, "novpn_snapshot_entries", "gauge", "Entries in the current snapshot, by kind.");
+        out.append("novpn_snapshot_entries{kind=\"ip\"} ").append(ipListManager.getIpCount()).append('\n');
+        out.append("novpn_snapshot_entries{kind=\"ipv4_range\"} ").append(ipListManager.getCidrCount()).append('\n');
+        out.append("novpn_snapshot_entries{kind=\"ipv6_range\"} ").append(ipListManager.getIpv6RangeCount())
+                .append('\n');
+
+        counter(out, "novpn_refreshes", "List refreshes run.", metrics.getRefreshes());
+        gauge(out, "novpn_refresh_failed_sources", "Sources that failed in the last refresh.",
+                String.valueOf(metrics.getLastRefreshFailedSources()));
+        if (metrics.getLastRefreshMillis() > 0) {
+            gauge(out, "novpn_refresh_last_timestamp_seconds", "When the last refresh ran.",
+                    number(metrics.getLastRefreshMillis() / 1e3));
+        }
+
+        Map<String, Metrics.SourceStats> sources = new TreeMap<>(metrics.getSourceStats());
+        header(out, "novpn_source_up", "gauge", "Whether the last fetch of a source succeeded.");
+        sources.forEach((url, stats) -> sample(out, "novpn_source_up", url, stats.failed() ? "0" : "1"));
+        header(out, "novpn_source_fetch_seconds", "gauge", "Duration of the last fetch of a source.");
+        sources.forEach((url, stats) -> sample(out, "novpn_source_fetch_seconds", url,
+                number(stats.fetchNanos() / 1e9)));
+        header(out, "novpn_source_bytes", "gauge", "Body bytes of the last download of a source.");
+        sources.forEach((url, stats) -> sample(out, "novpn_source_bytes", url, String.valueOf(stats.bytes())));
+        header(out, "novpn_source_entries", "gauge", "Entries parsed from a source.");
+        sources.forEach((url, stats) -> sample(out, "novpn_source_entries", url, String.valueOf(stats.entries())));
+
+        return out.append("# EOF\n").toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        out.append(name).append("_total ").append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, String value) {
+        header(out, name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String source, String value) {
+        out.append(name).append("{source=\"");
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+        out.append("\"} ").append(value).append('\n');
+    }
+
+    private static String number(double value) {
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+}
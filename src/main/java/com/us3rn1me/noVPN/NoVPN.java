@@ -23,6 +23,8 @@ public class NoVPN {
 
     private ConfigManager configManager;
     private IpListManager ipListManager;
+    private ReputationProvider reputationProvider;
+    private MetricsExporter metricsExporter;
 
     @Inject
     public NoVPN(ProxyServer server, Logger logger, @DataDirectory Path dataDirectory) {
@@ -36,26 +38,40 @@ public class NoVPN {
         configManager = new ConfigManager(dataDirectory, logger);
         configManager.load();
 
-        ipListManager = new IpListManager(java.util.logging.Logger.getLogger("NoVPN"));
+        ipListManager = new IpListManager(java.util.logging.Logger.getLogger("NoVPN"), dataDirectory);
+        reputationProvider = new ReputationProvider(java.util.logging.Logger.getLogger("NoVPN"), dataDirectory);
+        reputationProvider.start(configManager.get());
+        VpnListener listener = new VpnListener(server, configManager, ipListManager, reputationProvider, logger);
+        ipListManager.setSnapshotListener(listener::sweep);
         ipListManager.start(configManager.get());
 
-        server.getEventManager().register(this,
-                new VpnListener(configManager, ipListManager, logger));
+        metricsExporter = new MetricsExporter(ipListManager, java.util.logging.Logger.getLogger("NoVPN"));
+        metricsExporter.start(configManager.get());
+
+        server.getEventManager().register(this, listener);
+        server.getChannelRegistrar().register(VerdictForwarder.CHANNEL);
+        server.getEventManager().register(this, new VerdictForwarder(configManager, ipListManager));
 
         CommandManager cmdManager = server.getCommandManager();
         CommandMeta meta = cmdManager.metaBuilder("novpn")
                 .aliases("anvpn")
                 .plugin(this)
                 .build();
-        cmdManager.register(meta, new NoVPNCommand(configManager, ipListManager));
+        cmdManager.register(meta, new NoVPNCommand(configManager, ipListManager, reputationProvider));
 
         logger.info("NoVPN v{} enabled.", BuildConstants.VERSION);
     }
 
     @Subscribe
     public void onProxyShutdown(ProxyShutdownEvent event) {
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+        }
         if (ipListManager != null) {
             ipListManager.shutdown();
         }
+        if (reputationProvider != null) {
+            reputationProvider.shutdown();
+        }
     }
 }
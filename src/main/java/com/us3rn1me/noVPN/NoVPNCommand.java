@@ -5,6 +5,9 @@ import com.velocitypowered.api.command.SimpleCommand;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides the {@code /novpn} command for in-game administration.
@@ -12,9 +15,11 @@ import java.util.List;
  * <p>
  * Subcommands:
  * <ul>
- * <li>{@code /novpn reload} — reloads config and refreshes IP lists</li>
+ * <li>{@code /novpn reload} — reloads config and refreshes IP lists in the background</li>
  * <li>{@code /novpn check <ip>} — checks whether an IP is blocked</li>
+ * <li>{@code /novpn explain <ip>} — lists every source that flags an IP</li>
  * <li>{@code /novpn info} — prints version and list statistics</li>
+ * <li>{@code /novpn stats} — prints login counters, lookup latency and per-source fetch results</li>
  * </ul>
  *
  * All subcommands require the {@code novpn.admin} permission.
@@ -26,10 +31,13 @@ public class NoVPNCommand implements SimpleCommand {
 
     private final ConfigManager configManager;
     private final IpListManager ipListManager;
+    private final ReputationProvider reputationProvider;
 
-    public NoVPNCommand(ConfigManager configManager, IpListManager ipListManager) {
+    public NoVPNCommand(ConfigManager configManager, IpListManager ipListManager,
+                        ReputationProvider reputationProvider) {
         this.configManager = configManager;
         this.ipListManager = ipListManager;
+        this.reputationProvider = reputationProvider;
     }
 
     @Override
@@ -50,7 +58,9 @@ public class NoVPNCommand implements SimpleCommand {
         switch (args[0].toLowerCase()) {
             case "reload" -> handleReload(source);
             case "check" -> handleCheck(source, args);
+            case "explain" -> handleExplain(source, args);
             case "info" -> handleInfo(source);
+            case "stats" -> handleStats(source);
             default -> sendUsage(source);
         }
     }
@@ -59,7 +69,7 @@ public class NoVPNCommand implements SimpleCommand {
     public List<String> suggest(Invocation invocation) {
         String[] args = invocation.arguments();
         if (args.length <= 1) {
-            return List.of("reload", "check", "info");
+            return List.of("reload", "check", "explain", "info", "stats");
         }
         return List.of();
     }
@@ -74,11 +84,24 @@ public class NoVPNCommand implements SimpleCommand {
     private void handleReload(CommandSource source) {
         source.sendMessage(MM.deserialize("<gray>Reloading config and IP lists..."));
         configManager.load();
-        ipListManager.refresh(configManager.get());
-        ipListManager.reconfigure(configManager.get());
-        source.sendMessage(MM.deserialize(
-                "<green>Done! Loaded <white>" + ipListManager.getIpCount() + " IPs</white> and <white>"
-                        + ipListManager.getCidrCount() + " CIDR ranges</white>."));
+        Config config = configManager.get();
+        CompletableFuture<Void> reconfigured = ipListManager.reconfigure(config);
+
+        // The download runs in the background; concurrent reloads share one refresh.
+        source.sendMessage(MM.deserialize("<gray>Config reloaded. Fetching <white>" + config.getLists().size()
+                + "</white> lists in the background..."));
+        long begin = System.nanoTime();
+        CompletableFuture.allOf(reconfigured, ipListManager.requestRefresh(config)).whenComplete((ignored, error) -> {
+            if (error != null) {
+                source.sendMessage(MM.deserialize("<red>Refreshing the IP lists failed: <white>"
+                        + MM.escapeTags(String.valueOf(error.getMessage())) + "</white>"));
+                return;
+            }
+            source.sendMessage(MM.deserialize(
+                    "<green>Done! Loaded <white>" + ipListManager.getIpCount() + " IPs</white> and <white>"
+                            + ipListManager.getCidrCount() + " CIDR ranges</white> in <white>"
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms</white>."));
+        });
     }
 
     private void handleCheck(CommandSource source, String[] args) {
@@ -97,16 +120,104 @@ public class NoVPNCommand implements SimpleCommand {
         }
     }
 
+    private void handleExplain(CommandSource source, String[] args) {
+        if (args.length < 2) {
+            source.sendMessage(MM.deserialize("<red>Usage: /novpn explain <ip>"));
+            return;
+        }
+
+        String ip = args[1];
+        IpListManager.Explanation result = ipListManager.explain(ip);
+
+        if (result == null) {
+            source.sendMessage(MM.deserialize("<red><bold>" + ip + "</bold> is not a valid IP address."));
+            return;
+        }
+
+        if (result.sources().isEmpty()) {
+            source.sendMessage(MM.deserialize("<green><bold>" + ip + "</bold> is not in any block list."
+                    + " <gray>(lookup: " + result.lookupNanos() + " ns)"));
+            return;
+        }
+
+        String verdict = result.blocked()
+                ? "<red>blocked"
+                : "<yellow>allowed (below min-matching-sources)";
+        source.sendMessage(MM.deserialize("<aqua><bold>" + ip + "</bold> matched <white>"
+                + result.entry() + "</white> in <white>" + result.sources().size() + "</white> source(s) — "
+                + verdict + " <gray>(lookup: " + result.lookupNanos() + " ns)"));
+        for (String name : result.sources()) {
+            source.sendMessage(MM.deserialize("<gray> - <white>" + name));
+        }
+    }
+
     private void handleInfo(CommandSource source) {
         source.sendMessage(MM.deserialize(
                 "<aqua>NoVPN v<white>" + BuildConstants.VERSION + "</white>"
                         + " — <white>" + ipListManager.getIpCount() + "</white> IPs"
-                        + ", <white>" + ipListManager.getCidrCount() + "</white> CIDR ranges loaded"
+                        + ", <white>" + ipListManager.getCidrCount() + "</white> CIDR ranges"
+                        + ", <white>" + ipListManager.getIpv6RangeCount() + "</white> IPv6 /64 ranges loaded"
                         + " from <white>" + configManager.get().getLists().size() + "</white> source(s)."));
+        source.sendMessage(MM.deserialize(
+                "<gray>IP set memory: <white>" + Units.formatBytes(ipListManager.getIpFootprintBytes())
+                        + "</white> (<white>~" + Units.formatBytes(ipListManager.getIpStringFootprintBytes())
+                        + "</white> as strings)"
+                        + (ipListManager.isSnapshotMapped() ? ", memory-mapped." : ".")));
+        if (ipListManager.getNetworkRangeCount() > 0) {
+            source.sendMessage(MM.deserialize(
+                    "<gray>Network database: <white>" + ipListManager.getNetworkRangeCount() + "</white> ranges, <white>"
+                            + ipListManager.getBlockedNetworkRangeCount() + "</white> blocked by ASN or country."));
+        }
+    }
+
+    private void handleStats(CommandSource source) {
+        Metrics metrics = ipListManager.getMetrics();
+        source.sendMessage(MM.deserialize(
+                "<aqua>Logins checked: <white>" + metrics.getChecks() + "</white>"
+                        + ", blocked: <white>" + metrics.getBlocks() + "</white>"
+                        + ", bypassed: <white>" + metrics.getBypasses() + "</white>"));
+        if (metrics.getLookups() > 0) {
+            source.sendMessage(MM.deserialize(
+                    "<gray>Lookup latency: p50 ≤ <white>" + Units.formatNanos(metrics.getLookupPercentileNanos(50))
+                            + "</white>, p99 ≤ <white>" + Units.formatNanos(metrics.getLookupPercentileNanos(99))
+                            + "</white>, max ≤ <white>" + Units.formatNanos(metrics.getLookupPercentileNanos(100))
+                            + "</white> over <white>" + metrics.getLookups() + "</white> lookups"));
+        }
+        if (!configManager.get().getReputationUrl().isEmpty()) {
+            source.sendMessage(MM.deserialize(
+                    "<gray>Reputation lookups: <white>" + reputationProvider.getLookups() + "</white>"
+                            + ", flagged: <white>" + reputationProvider.getFlagged() + "</white>"
+                            + ", from cache: <white>" + reputationProvider.getCacheHits() + "</white>"
+                            + ", failed: <white>" + reputationProvider.getFailures() + "</white>"
+                            + ", skipped: <white>" + reputationProvider.getSkipped() + "</white>"
+                            + (reputationProvider.isBreakerOpen() ? " <red>(breaker open)" : "")));
+        }
+        source.sendMessage(MM.deserialize(
+                "<gray>Snapshot: <white>" + Units.formatBytes(ipListManager.getFootprintBytes()) + "</white>"
+                        + (ipListManager.isSnapshotMapped() ? " (memory-mapped)" : " (heap)")
+                        + (ipListManager.getBitmapFootprintBytes() >= 0
+                                ? ", bitmap engine: <white>" + Units.formatBytes(ipListManager.getBitmapFootprintBytes())
+                                        + "</white>"
+                                : "")));
+
+        for (Map.Entry<String, Metrics.SourceStats> entry
+                : metrics.getSourceStats(configManager.get().getLists())) {
+            Metrics.SourceStats stats = entry.getValue();
+            String result = stats.failed()
+                    ? "<red>failed: " + MM.escapeTags(stats.lastError())
+                    : "<white>" + stats.entries() + "</white> entries, <white>"
+                            + (stats.notModified() ? "unchanged" : Units.formatBytes(stats.bytes())) + "</white>";
+            String lastError = !stats.failed() && stats.lastError() != null
+                    ? " <dark_gray>(last error: " + MM.escapeTags(stats.lastError()) + ")"
+                    : "";
+            source.sendMessage(MM.deserialize("<gray> - <white>" + MM.escapeTags(entry.getKey())
+                    + "</white> in <white>" + Units.formatNanos(stats.fetchNanos()) + "</white>: "
+                    + result + lastError));
+        }
     }
 
     private void sendUsage(CommandSource source) {
         source.sendMessage(MM.deserialize(
-                "<yellow>Usage: <white>/novpn <reload|check <ip>|info>"));
+                "<yellow>Usage: <white>/novpn <reload|check <ip>|explain <ip>|info|stats>"));
     }
 }
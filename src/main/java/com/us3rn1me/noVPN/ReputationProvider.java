@@ -0,0 +1,411 @@
+package com.us3rn1me.noVPN;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Asks an external reputation service about addresses the lists do not flag,
+ * to catch residential proxies that no static list covers.
+ *
+ * A lookup never blocks the caller: {@link #check} returns a future, which
+ * Velocity parks the login on with an {@code EventTask} and Bukkit simply
+ * waits for on its already-async pre-login thread. Every failure lets the
+ * player in:
+ * <ul>
+ *   <li>answers are cached per address for {@code reputation-cache-minutes},
+ *       the least recently used beyond {@code reputation-cache-size} are
+ *       dropped, and the cache is saved across restarts;</li>
+ *   <li>concurrent logins from one address share a single request;</li>
+ *   <li>at most {@code reputation-max-in-flight} requests run at once, and
+ *       logins beyond that go unchecked;</li>
+ *   <li>a request that fails or takes longer than
+ *       {@code reputation-budget-millis} counts against the circuit breaker.
+ *       After {@value #BREAKER_THRESHOLD} in a row it opens and no requests
+ *       are sent for a while; then a single trial request decides whether it
+ *       closes again.</li>
+ * </ul>
+ */
+public final class ReputationProvider {
+
+    private static final String CACHE_FILE_NAME = "reputation-cache.bin";
+    private static final int MAGIC = 0x4E565250; // "NVRP"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int BREAKER_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final CompletableFuture<Boolean> CLEAN = CompletableFuture.completedFuture(false);
+    private static final CompletableFuture<Boolean> FLAGGED = CompletableFuture.completedFuture(true);
+
+    /** A cached answer; expiry is wall-clock time so it survives a restart. */
+    private record Entry(boolean flagged, long expiresMillis) {
+    }
+
+    /** The parsed {@code reputation-url} and pattern; {@code pattern} is null if either is unusable. */
+    private record Target(String url, String patternSource, String host, Pattern pattern) {
+    }
+
+    private final Logger logger;
+    private final HttpClient httpClient;
+    private final Path cacheFile;
+    private final LongSupplier clockMillis;
+    private final long breakerOpenNanos;
+
+    // Access-ordered, so the eldest entry is the least recently used; guarded by itself
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private int maxEntries = Integer.MAX_VALUE;
+    // The reputation-url the cached answers came from; guarded by cache
+    private String cacheUrl = "";
+
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile Target target;
+
+    // Circuit breaker; while open, only the request holding trial is sent
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trial = new AtomicBoolean();
+    private volatile boolean open;
+    private volatile long openUntilNanos;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder flagged = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    public ReputationProvider(Logger logger, Path dataDirectory) {
+        this(logger, HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build(), dataDirectory);
+    }
+
+    /**
+     * Creates a provider that sends lookups through the given client, e.g. one
+     * pointed at a local stand-in server. A {@code null} data directory keeps
+     * the cache on the heap only.
+     */
+    ReputationProvider(Logger logger, HttpClient httpClient, Path dataDirectory) {
+        this(logger, httpClient, dataDirectory, System::currentTimeMillis, BREAKER_OPEN_NANOS);
+    }
+
+    /**
+     * Creates a provider whose cache expiry follows {@code clockMillis} and
+     * whose breaker stays open for {@code breakerOpenNanos}, so tests do not
+     * have to wait out the real durations.
+     */
+    ReputationProvider(Logger logger, HttpClient httpClient, Path dataDirectory, LongSupplier clockMillis,
+                       long breakerOpenNanos) {
+        this.logger = logger;
+        this.httpClient = httpClient;
+        this.cacheFile = dataDirectory == null ? null : dataDirectory.resolve(CACHE_FILE_NAME);
+        this.clockMillis = clockMillis;
+        this.breakerOpenNanos = breakerOpenNanos;
+    }
+
+    /** Loads the answers saved by the previous run, if they came from the same {@code reputation-url}. */
+    public void start(Config config) {
+        if (cacheFile == null || config.getReputationUrl().isEmpty())
+            return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                throw new IOException("not a reputation cache");
+            String url = in.readUTF();
+            int count = in.readInt();
+            if (!url.equals(config.getReputationUrl()))
+                return;
+
+            long now = clockMillis.getAsLong();
+            synchronized (cache) {
+                maxEntries = config.getReputationCacheSize();
+                cacheUrl = url;
+                for (int i = 0; i < count; i++) {
+                    String ip = in.readUTF();
+                    Entry entry = new Entry(in.readBoolean(), in.readLong());
+                    if (entry.expiresMillis() > now) {
+                        cache.put(ip, entry);
+                    }
+                }
+                logger.info("NoVPN: Loaded " + cache.size() + " cached reputation answers.");
+            }
+        } catch (NoSuchFileException e) {
+            // First start with a reputation provider.
+        } catch (IOException e) {
+            logger.warning("NoVPN: Ignoring unusable reputation cache " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    /** Saves the cached answers for the next run and releases the HTTP client. */
+    public void shutdown() {
+        saveCache();
+        httpClient.shutdownNow();
+    }
+
+    /**
+     * Returns whether the reputation service flags {@code address}. The future
+     * is already complete when the provider is disabled, the answer is cached,
+     * or the lookup is skipped; it never completes exceptionally.
+     */
+    public CompletableFuture<Boolean> check(InetAddress address, Config config) {
+        if (config.getReputationUrl().isEmpty() || address.isLoopbackAddress() || address.isSiteLocalAddress()
+                || address.isLinkLocalAddress() || address.isAnyLocalAddress())
+            return CLEAN;
+
+        Target current = target(config);
+        if (current.pattern() == null)
+            return CLEAN;
+
+        String ip = address.getHostAddress();
+        Entry cached = cached(ip, current.url());
+        if (cached != null) {
+            cacheHits.increment();
+            return cached.flagged() ? FLAGGED : CLEAN;
+        }
+
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        CompletableFuture<Boolean> pending = inFlight.putIfAbsent(ip, result);
+        if (pending != null)
+            return pending;
+
+        // Build the request first, so a skipped address never holds the breaker's trial.
+        long budgetMillis = config.getReputationBudgetMillis();
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(current.url().replace("{ip}", ip)))
+                    .timeout(Duration.ofMillis(budgetMillis))
+                    .header("User-Agent", "NoVPN/" + BuildConstants.VERSION + " (github.com/us3rn1me/NoVPN)")
+                    .GET()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            // The address does not fit where {ip} sits in the URL, e.g. IPv6 in a host name.
+            skipped.increment();
+            finish(ip, result, false);
+            return result;
+        }
+
+        if (running.incrementAndGet() > config.getReputationMaxInFlight() || !allowRequest()) {
+            running.decrementAndGet();
+            skipped.increment();
+            finish(ip, result, false);
+            return result;
+        }
+
+        lookups.increment();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .orTimeout(budgetMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> {
+                    running.decrementAndGet();
+                    if (error != null || response.statusCode() < 200 || response.statusCode() >= 300) {
+                        failures.increment();
+                        recordFailure();
+                        finish(ip, result, false);
+                        return;
+                    }
+
+                    boolean listed = current.pattern().matcher(response.body()).find();
+                    recordSuccess();
+                    if (listed) {
+                        flagged.increment();
+                    }
+                    store(ip, current.url(), listed, config);
+                    finish(ip, result, listed);
+                });
+        return result;
+    }
+
+    /** Returns the name to report as the {@code <source>} of a reputation kick: the service's host. */
+    public String getSourceName(Config config) {
+        return target(config).host();
+    }
+
+    // ------------------------------------------------------------------
+
+    private void saveCache() {
+        if (cacheFile == null)
+            return;
+
+        String url;
+        List<Map.Entry<String, Entry>> entries;
+        synchronized (cache) {
+            if (cache.isEmpty())
+                return;
+            url = cacheUrl;
+            entries = new ArrayList<>(cache.entrySet());
+        }
+
+        // Least recently used first, so loading them back keeps the eviction order.
+        Path tmp = cacheFile.resolveSibling(CACHE_FILE_NAME + ".tmp");
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(url);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries) {
+                    out.writeUTF(entry.getKey());
+                    out.writeBoolean(entry.getValue().flagged());
+                    out.writeLong(entry.getValue().expiresMillis());
+                }
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("NoVPN: Could not save the reputation cache: " + e.getMessage());
+        }
+    }
+
+    private Target target(Config config) {
+        Target current = target;
+        String url = config.getReputationUrl();
+        String patternSource = config.getReputationPattern();
+        if (current != null && current.url().equals(url) && current.patternSource().equals(patternSource))
+            return current;
+
+        String host = url;
+        Pattern pattern = null;
+        try {
+            host = URI.create(url.replace("{ip}", "127.0.0.1")).getHost();
+            pattern = Pattern.compile(patternSource);
+        } catch (IllegalArgumentException e) {
+            // PatternSyntaxException is an IllegalArgumentException too.
+            logger.warning("NoVPN: Reputation lookups are disabled, "
+                    + (e instanceof PatternSyntaxException ? "reputation-pattern" : "reputation-url")
+                    + " is invalid: " + e.getMessage());
+        }
+        current = new Target(url, patternSource, host == null ? url : host, pattern);
+        target = current;
+        return current;
+    }
+
+    private Entry cached(String ip, String url) {
+        synchronized (cache) {
+            if (!url.equals(cacheUrl))
+                return null;
+            Entry entry = cache.get(ip);
+            if (entry == null)
+                return null;
+            if (entry.expiresMillis() <= clockMillis.getAsLong()) {
+                cache.remove(ip);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void store(String ip, String url, boolean listed, Config config) {
+        long ttlMillis = TimeUnit.MINUTES.toMillis(config.getReputationCacheMinutes());
+        if (ttlMillis <= 0)
+            return;
+
+        synchronized (cache) {
+            // Answers from another service are meaningless now.
+            if (!url.equals(cacheUrl)) {
+                cache.clear();
+                cacheUrl = url;
+            }
+            maxEntries = config.getReputationCacheSize();
+            cache.put(ip, new Entry(listed, clockMillis.getAsLong() + ttlMillis));
+        }
+    }
+
+    private void finish(String ip, CompletableFuture<Boolean> result, boolean listed) {
+        inFlight.remove(ip, result);
+        result.complete(listed);
+    }
+
+    private boolean allowRequest() {
+        if (!open)
+            return true;
+        if (System.nanoTime() - openUntilNanos < 0)
+            return false;
+        // Half-open: let exactly one request through to probe the service.
+        return trial.compareAndSet(false, true);
+    }
+
+    private void recordSuccess() {
+        consecutiveFailures.set(0);
+        if (open) {
+            open = false;
+            trial.set(false);
+            logger.info("NoVPN: The reputation service is answering again; lookups resumed.");
+        }
+    }
+
+    private void recordFailure() {
+        if (open) {
+            // The trial failed; stay open for another round.
+            openUntilNanos = System.nanoTime() + breakerOpenNanos;
+            trial.set(false);
+        } else if (consecutiveFailures.incrementAndGet() >= BREAKER_THRESHOLD) {
+            openUntilNanos = System.nanoTime() + breakerOpenNanos;
+            open = true;
+            logger.warning("NoVPN: The reputation service failed or exceeded its latency budget "
+                    + BREAKER_THRESHOLD + " times in a row; letting players in unchecked for "
+                    + TimeUnit.NANOSECONDS.toSeconds(breakerOpenNanos) + " s.");
+        }
+    }
+
+    // ------------------------------------------------------------------
+
+    /** Returns the number of requests sent to the reputation service. */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /** Returns the number of requests whose answer flagged the address. */
+    public long getFlagged() {
+        return flagged.sum();
+    }
+
+    /** Returns the number of checks answered from the cache. */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /** Returns the number of requests that failed or ran over budget. */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /** Returns the number of checks skipped by the in-flight limit or the open breaker. */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /** Whether the circuit breaker is currently open. */
+    public boolean isBreakerOpen() {
+        return open;
+    }
+}
@@ -0,0 +1,72 @@
+package com.us3rn1me.noVPN;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+
+/**
+ * What one snapshot swap added: the addresses that are blocked by the new
+ * snapshot but were not by the previous one. Used to sweep players that are
+ * already online after a refresh.
+ *
+ * The IPv4 side is computed once as a bitmap difference of the two
+ * snapshots (see {@link Ipv4Bitmap#andNot}), so checking a player is a single
+ * bitmap probe no matter how large the lists are. IPv6 prefixes are few and
+ * are checked against both snapshots directly.
+ */
+public final class SnapshotDiff {
+
+    private final LookupIndex previous;
+    private final LookupIndex next;
+    private final int minMatchingSources;
+    private final Ipv4Bitmap addedIpv4;
+
+    private SnapshotDiff(LookupIndex previous, LookupIndex next, int minMatchingSources, Ipv4Bitmap addedIpv4) {
+        this.previous = previous;
+        this.next = next;
+        this.minMatchingSources = minMatchingSources;
+        this.addedIpv4 = addedIpv4;
+    }
+
+    /**
+     * Computes the difference between two snapshots.
+     *
+     * @param previousBitmap the previous snapshot as a bitmap, or {@code null}
+     *                       to derive it
+     * @param nextBitmap     the new snapshot as a bitmap, or {@code null} to
+     *                       derive it
+     */
+    static SnapshotDiff between(LookupIndex previous, Ipv4Bitmap previousBitmap,
+                                LookupIndex next, Ipv4Bitmap nextBitmap, int minMatchingSources) {
+        if (previousBitmap == null) {
+            previousBitmap = previous.toBitmap(minMatchingSources);
+        }
+        if (nextBitmap == null) {
+            nextBitmap = next.toBitmap(minMatchingSources);
+        }
+        return new SnapshotDiff(previous, next, minMatchingSources, nextBitmap.andNot(previousBitmap));
+    }
+
+    /** Returns whether the new snapshot blocks {@code address} and the previous one did not. */
+    public boolean isAdded(InetAddress address) {
+        if (address instanceof Inet4Address ipv4)
+            return addedIpv4.contains(IpAddresses.packIpv4(ipv4));
+
+        long[] packed = new long[2];
+        IpAddresses.toIpv6(address, packed);
+        if (IpAddresses.isIpv4Mapped(packed[0], packed[1]))
+            return addedIpv4.contains((int) packed[1]);
+
+        return next.matchCount(next.match(packed[0], packed[1])) >= minMatchingSources
+                && previous.matchCount(previous.match(packed[0], packed[1])) < minMatchingSources;
+    }
+
+    /** Returns the number of IPv4 addresses that became blocked. */
+    public long addedIpv4Count() {
+        return addedIpv4.cardinality();
+    }
+
+    /** Returns whether nothing at all can have been added, so a sweep can be skipped. */
+    public boolean isEmpty() {
+        return addedIpv4.isEmpty() && next.ipv6RangeCount() == 0;
+    }
+}
@@ -0,0 +1,285 @@
+package com.us3rn1me.noVPN;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes a {@link LookupIndex} as a compact binary file that is
+ * served directly through a memory mapping.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header   magic "NVPN", format version, payload length, CRC32C of payload
+ *   payload  counts, source names, then the index tables:
+ *            long tables (set bitmasks, IPv6 starts/ends) first so they stay
+ *            8-byte aligned, then int tables (set sizes, exact IPs and their
+ *            sets, IPv4 range starts/ends/sets, IPv6 range sets)
+ * </pre>
+ *
+ * Every snapshot is written to a new generation file
+ * ({@code snapshot-<n>.bin}) and published through a small pointer file
+ * that names it, so a file is never replaced while it is mapped, which
+ * Windows refuses. The pointer is written to a temporary sibling and
+ * atomically moved into place, so a reader never observes a partially
+ * written snapshot. Older generations are deleted after each write; where
+ * the system refuses to delete a file that is still mapped, it is retried
+ * on the next write.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x4E56504E; // "NVPN"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    // A pointer only holds a generation file name.
+    private static final int MAX_POINTER_BYTES = 256;
+    private static final String GENERATION_SUFFIX = ".bin";
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes {@code index} to a new generation file next to the pointer
+     * {@code file}, points {@code file} at it, and deletes older generations.
+     *
+     * @throws IOException if the snapshot or the pointer cannot be written
+     */
+    public static void write(LookupIndex index, Path file) throws IOException {
+        List<byte[]> names = new ArrayList<>();
+        long namesBytes = 0;
+        for (String source : index.sources()) {
+            byte[] name = source.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            namesBytes += 4 + name.length;
+        }
+
+        int ipCount = index.ipCount();
+        int rangeCount = index.rangeCount();
+        int v6Count = index.ipv6RangeCount();
+        int setCount = index.setCount();
+        int wordsPerSet = index.wordsPerSet();
+
+        long countsBytes = 8 * 4 + 8;
+        long namesEnd = align8(countsBytes + namesBytes);
+        long payloadBytes = namesEnd
+                + 8L * ((long) setCount * wordsPerSet + 2L * v6Count)
+                + 4L * (setCount + 2L * ipCount + 3L * rangeCount + v6Count);
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path generation = newGeneration(file);
+
+        try (FileChannel channel = FileChannel.open(generation, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + payloadBytes);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+
+            ByteBuffer payload = out.slice(HEADER_BYTES, (int) payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+            payload.putInt(names.size())
+                    .putInt(wordsPerSet)
+                    .putInt(setCount)
+                    .putInt(ipCount)
+                    .putInt(rangeCount)
+                    .putInt(v6Count)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(index.stringFootprintBytes());
+            for (byte[] name : names) {
+                payload.putInt(name.length).put(name);
+            }
+            payload.position((int) namesEnd);
+
+            payload.asLongBuffer().put(index.setWords());
+            payload.position(payload.position() + 8 * setCount * wordsPerSet);
+            payload.asLongBuffer().put(index.v6Starts());
+            payload.position(payload.position() + 8 * v6Count);
+            payload.asLongBuffer().put(index.v6Ends());
+            payload.position(payload.position() + 8 * v6Count);
+
+            for (IntBuffer table : List.of(index.setSizes(), index.ipKeys(), index.ipSets(),
+                    index.rangeStarts(), index.rangeEnds(), index.rangeSets(), index.v6Sets())) {
+                int length = table.remaining();
+                payload.asIntBuffer().put(table);
+                payload.position(payload.position() + 4 * length);
+            }
+
+            CRC32C crc = new CRC32C();
+            crc.update(payload.flip());
+
+            out.putInt(0, MAGIC)
+                    .putInt(4, FORMAT_VERSION)
+                    .putLong(8, payloadBytes)
+                    .putInt(16, (int) crc.getValue())
+                    .putInt(20, 0);
+            out.force();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(generation);
+            throw e;
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, generation.getFileName().toString(), StandardCharsets.US_ASCII);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteOlderGenerations(file, generation);
+    }
+
+    /**
+     * Returns the generation file that the pointer {@code file} names, or
+     * {@code file} itself if it is a snapshot rather than a pointer.
+     *
+     * @throws IOException if the pointer is missing or malformed
+     */
+    public static Path resolve(Path file) throws IOException {
+        byte[] head;
+        try (InputStream in = Files.newInputStream(file)) {
+            head = in.readNBytes(MAX_POINTER_BYTES);
+        }
+        if (head.length >= 4 && ByteBuffer.wrap(head).order(ByteOrder.LITTLE_ENDIAN).getInt(0) == MAGIC)
+            return file;
+
+        String name = new String(head, StandardCharsets.US_ASCII).trim();
+        if (!name.startsWith(generationPrefix(file)) || !name.endsWith(GENERATION_SUFFIX)
+                || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0)
+            throw new IOException("malformed snapshot pointer");
+        return file.resolveSibling(name);
+    }
+
+    /**
+     * Maps the snapshot a pointer written by {@link #write} names (or a
+     * generation file itself) and returns an index that serves lookups
+     * straight from the mapping.
+     *
+     * @throws IOException if the file is missing, truncated, from another
+     *                     format version or fails its checksum
+     */
+    public static LookupIndex read(Path file) throws IOException {
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(resolve(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE)
+                throw new IOException("unexpected snapshot size " + size);
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        in.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (in.getInt(0) != MAGIC)
+            throw new IOException("not a NoVPN snapshot");
+        int version = in.getInt(4);
+        if (version != FORMAT_VERSION)
+            throw new IOException("unsupported snapshot version " + version);
+        long payloadBytes = in.getLong(8);
+        if (payloadBytes != in.capacity() - HEADER_BYTES)
+            throw new IOException("truncated snapshot");
+
+        ByteBuffer payload = in.slice(HEADER_BYTES, (int) payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != in.getInt(16))
+            throw new IOException("snapshot checksum mismatch");
+
+        try {
+            int sourceCount = payload.getInt();
+            int wordsPerSet = payload.getInt();
+            int setCount = payload.getInt();
+            int ipCount = payload.getInt();
+            int rangeCount = payload.getInt();
+            int v6Count = payload.getInt();
+            payload.getInt();
+            payload.getInt();
+            long stringFootprintBytes = payload.getLong();
+
+            List<String> sources = new ArrayList<>(sourceCount);
+            for (int i = 0; i < sourceCount; i++) {
+                byte[] name = new byte[payload.getInt()];
+                payload.get(name);
+                sources.add(new String(name, StandardCharsets.UTF_8));
+            }
+            payload.position((int) align8(payload.position()));
+
+            LongBuffer setWords = longs(payload, setCount * wordsPerSet);
+            LongBuffer v6Starts = longs(payload, v6Count);
+            LongBuffer v6Ends = longs(payload, v6Count);
+            IntBuffer setSizes = ints(payload, setCount);
+            IntBuffer ipKeys = ints(payload, ipCount);
+            IntBuffer ipSets = ints(payload, ipCount);
+            IntBuffer rangeStarts = ints(payload, rangeCount);
+            IntBuffer rangeEnds = ints(payload, rangeCount);
+            IntBuffer rangeSets = ints(payload, rangeCount);
+            IntBuffer v6Sets = ints(payload, v6Count);
+
+            return new LookupIndex(List.copyOf(sources), ipKeys, ipSets, rangeStarts, rangeEnds, rangeSets,
+                    v6Starts, v6Ends, v6Sets, setWords, wordsPerSet, setSizes, stringFootprintBytes, true);
+        } catch (RuntimeException e) {
+            throw new IOException("malformed snapshot", e);
+        }
+    }
+
+    /** Creates an empty, not yet used generation file next to {@code file}. */
+    private static Path newGeneration(Path file) throws IOException {
+        String prefix = generationPrefix(file);
+        for (long n = System.currentTimeMillis(); ; n++) {
+            try {
+                return Files.createFile(file.resolveSibling(prefix + n + GENERATION_SUFFIX));
+            } catch (FileAlreadyExistsException e) {
+                // Written within the same millisecond; take the next number.
+            }
+        }
+    }
+
+    /** Deletes every generation next to {@code file} except {@code current}. */
+    private static void deleteOlderGenerations(Path file, Path current) {
+        try (DirectoryStream<Path> generations = Files.newDirectoryStream(file.toAbsolutePath().getParent(),
+                generationPrefix(file) + "*" + GENERATION_SUFFIX)) {
+            for (Path generation : generations) {
+                if (generation.getFileName().equals(current.getFileName()))
+                    continue;
+                try {
+                    Files.deleteIfExists(generation);
+                } catch (IOException e) {
+                    // Still mapped somewhere (Windows); retried after the next write.
+                }
+            }
+        } catch (IOException e) {
+            // Left for the next write.
+        }
+    }
+
+    /** Returns the name prefix of the generation files of pointer {@code file}. */
+    private static String generationPrefix(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0 ? name.substring(0, dot) : name) + "-";
+    }
+
+    private static LongBuffer longs(ByteBuffer payload, int count) {
+        LongBuffer view = payload.slice(payload.position(), 8 * count)
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        payload.position(payload.position() + 8 * count);
+        return view;
+    }
+
+    private static IntBuffer ints(ByteBuffer payload, int count) {
+        IntBuffer view = payload.slice(payload.position(), 4 * count)
+                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        payload.position(payload.position() + 4 * count);
+        return view;
+    }
+
+    private static long align8(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
@@ -0,0 +1,123 @@
+package com.us3rn1me.noVPN;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Follows a snapshot file published by another instance (the leader) in a
+ * shared directory, and hands every new generation of it to a callback.
+ *
+ * The leader writes each snapshot to a new generation file and atomically
+ * moves a pointer naming it into place (see {@link SnapshotFile#write}). A
+ * generation is recognized by the file the pointer names. The directory is
+ * watched for the move, and polled every few seconds as well, for file
+ * systems that deliver no events.
+ *
+ * Generation files are never rewritten, so a follower never reads a
+ * snapshot that is being written. The leader deletes older generations, but
+ * the follower's mapping of one stays valid; where the system refuses to
+ * delete a mapped file, the leader retries after its next write.
+ */
+public final class SnapshotFollower {
+
+    // Fallback poll for file systems without change notifications.
+    private static final long POLL_MILLIS = 5_000;
+
+    private final Path file;
+    private final Logger logger;
+    private final Consumer<LookupIndex> onGeneration;
+
+    private Path generation;
+    private WatchService watchService;
+    private Thread thread;
+
+    public SnapshotFollower(Path file, Logger logger, Consumer<LookupIndex> onGeneration) {
+        this.file = file;
+        this.logger = logger;
+        this.onGeneration = onGeneration;
+    }
+
+    /** Loads the current generation, if there is one, and starts following the file. */
+    public synchronized void start() {
+        check();
+        try {
+            Files.createDirectories(file.getParent());
+            watchService = FileSystems.getDefault().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.warning("NoVPN: Cannot watch " + file.getParent() + ", polling for new snapshots instead: "
+                    + e.getMessage());
+        }
+        WatchService service = watchService;
+        thread = Thread.ofPlatform().daemon().name("novpn-follow").start(() -> follow(service));
+    }
+
+    /** Stops following the file. */
+    public synchronized void close() {
+        if (thread == null)
+            return;
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException ignored) {
+        }
+        thread.interrupt();
+        thread = null;
+        watchService = null;
+    }
+
+    /**
+     * Loads the file if it is a generation not seen yet.
+     *
+     * @return whether a new generation was handed to the callback
+     */
+    public synchronized boolean check() {
+        try {
+            Path current = SnapshotFile.resolve(file);
+            if (current.equals(generation))
+                return false;
+
+            LookupIndex index = SnapshotFile.read(current);
+            generation = current;
+            onGeneration.accept(index);
+            return true;
+        } catch (NoSuchFileException e) {
+            // The leader has not published anything yet, or just replaced the generation named.
+            return false;
+        } catch (IOException e) {
+            logger.warning("NoVPN: Ignoring unusable shared snapshot " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void follow(WatchService service) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (service == null) {
+                    Thread.sleep(POLL_MILLIS);
+                } else {
+                    WatchKey key = service.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                }
+                check();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed by close().
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.us3rn1me.noVPN;
+
+import java.util.Locale;
+
+/**
+ * Human-readable formatting for sizes and durations shown in command output.
+ */
+public final class Units {
+
+    private Units() {
+    }
+
+    /** Formats a byte count using binary units, e.g. {@code "3.2 MiB"}. */
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024)
+            return bytes + " B";
+        if (bytes < 1024L * 1024)
+            return String.format(Locale.ROOT, "%.1f KiB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024)
+            return String.format(Locale.ROOT, "%.1f MiB", bytes / (1024.0 * 1024));
+        return String.format(Locale.ROOT, "%.2f GiB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    /** Formats a duration in nanoseconds with a fitting unit, e.g. {@code "850 ns"} or {@code "1.4 ms"}. */
+    public static String formatNanos(long nanos) {
+        if (nanos < 1_000)
+            return nanos + " ns";
+        if (nanos < 1_000_000)
+            return String.format(Locale.ROOT, "%.1f µs", nanos / 1e3);
+        if (nanos < 1_000_000_000)
+            return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+        return String.format(Locale.ROOT, "%.2f s", nanos / 1e9);
+    }
+}
@@ -0,0 +1,106 @@
+package com.us3rn1me.noVPN;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * The proxy's verdict on one player, sent to the backend server over the
+ * {@value #CHANNEL} plugin channel so a backend in {@code trust-proxy} mode
+ * does not have to load the lists itself.
+ *
+ * Wire format (big-endian):
+ * <pre>
+ *   byte     format version (2)
+ *   long     player UUID, most significant bits
+ *   long     player UUID, least significant bits
+ *   byte     1 if the player's IP is listed but was let through by the
+ *            allowlist or bypass permission, else 0
+ *   long     generation of the proxy's snapshot that produced the verdict
+ *   long     time the verdict was made, in epoch milliseconds
+ *   byte[32] HMAC-SHA256 of everything above, keyed with verdict-secret
+ * </pre>
+ *
+ * Backends only accept verdicts signed with their own {@code verdict-secret}
+ * and made within {@link #MAX_AGE_MILLIS} of their clock, so anyone who can
+ * send plugin messages to a backend, such as a client connecting to it
+ * directly, cannot forge or replay one later.
+ *
+ * @param player          the player the verdict is about
+ * @param listed          whether the player's IP is listed (and was let through anyway)
+ * @param generation      the proxy's snapshot generation, see {@link IpListManager#getGeneration()}
+ * @param timestampMillis when the proxy made the verdict
+ */
+public record Verdict(UUID player, boolean listed, long generation, long timestampMillis) {
+
+    /** The plugin messaging channel verdicts are sent on. */
+    public static final String CHANNEL = "novpn:verdict";
+
+    /** How far a verdict's timestamp may be from the receiving clock before it is rejected as stale. */
+    public static final long MAX_AGE_MILLIS = 30_000;
+
+    private static final byte FORMAT_VERSION = 2;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_BYTES = 32;
+    private static final int SIGNED_BYTES = 1 + 8 + 8 + 1 + 8 + 8;
+    private static final int BYTES = SIGNED_BYTES + MAC_BYTES;
+
+    /**
+     * Encodes and signs this verdict as a plugin message payload.
+     *
+     * @param secret the shared {@code verdict-secret}; must not be empty
+     */
+    public byte[] encode(String secret) {
+        byte[] message = ByteBuffer.allocate(BYTES)
+                .put(FORMAT_VERSION)
+                .putLong(player.getMostSignificantBits())
+                .putLong(player.getLeastSignificantBits())
+                .put((byte) (listed ? 1 : 0))
+                .putLong(generation)
+                .putLong(timestampMillis)
+                .array();
+        System.arraycopy(mac(secret, message), 0, message, SIGNED_BYTES, MAC_BYTES);
+        return message;
+    }
+
+    /**
+     * Decodes a plugin message payload and checks its signature and age.
+     *
+     * @param secret    the shared {@code verdict-secret}; with none set, every
+     *                  verdict is rejected
+     * @param nowMillis the receiver's current time
+     * @return the verdict, or {@code null} if the payload is malformed, from an
+     *         unknown format version, not signed with {@code secret}, or stale
+     */
+    public static Verdict decode(byte[] message, String secret, long nowMillis) {
+        if (secret.isEmpty() || message.length != BYTES || message[0] != FORMAT_VERSION)
+            return null;
+        if (!MessageDigest.isEqual(mac(secret, message), Arrays.copyOfRange(message, SIGNED_BYTES, BYTES)))
+            return null;
+
+        ByteBuffer in = ByteBuffer.wrap(message, 1, SIGNED_BYTES - 1);
+        Verdict verdict = new Verdict(new UUID(in.getLong(), in.getLong()), in.get() != 0, in.getLong(),
+                in.getLong());
+        if (Math.abs(nowMillis - verdict.timestampMillis()) > MAX_AGE_MILLIS)
+            return null;
+        return verdict;
+    }
+
+    /** Computes the HMAC of the signed part of {@code message}. */
+    private static byte[] mac(String secret, byte[] message) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM));
+            mac.update(message, 0, SIGNED_BYTES);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            // Every JRE ships HmacSHA256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.us3rn1me.noVPN;
+
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.PluginMessageEvent;
+import com.velocitypowered.api.event.player.ServerPostConnectEvent;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.messages.MinecraftChannelIdentifier;
+
+import java.net.InetAddress;
+
+/**
+ * Sends the proxy's {@link Verdict} on each player to the backend server they
+ * join, so backends running NoVPN with {@code trust-proxy} need no lists of
+ * their own.
+ *
+ * Only players the proxy let through ever reach a backend, so a verdict
+ * mostly confirms that the player was checked, and against which snapshot.
+ * Verdicts are signed with {@code verdict-secret} and none are sent while it
+ * is unset. Messages on the channel that come from clients are always
+ * dropped, so a player cannot forge a verdict through the proxy either.
+ */
+public class VerdictForwarder {
+
+    public static final MinecraftChannelIdentifier CHANNEL = MinecraftChannelIdentifier.create("novpn", "verdict");
+
+    private final ConfigManager configManager;
+    private final IpListManager ipListManager;
+
+    public VerdictForwarder(ConfigManager configManager, IpListManager ipListManager) {
+        this.configManager = configManager;
+        this.ipListManager = ipListManager;
+    }
+
+    @Subscribe
+    public void onServerPostConnect(ServerPostConnectEvent event) {
+        Config config = configManager.get();
+        if (!config.isForwardVerdicts() || config.getVerdictSecret().isEmpty())
+            return;
+
+        Player player = event.getPlayer();
+        InetAddress address = player.getRemoteAddress().getAddress();
+        // Not a login, so it stays out of the lookup metrics.
+        Verdict verdict = new Verdict(player.getUniqueId(), ipListManager.isListed(address),
+                ipListManager.getGeneration(), System.currentTimeMillis());
+        byte[] message = verdict.encode(config.getVerdictSecret());
+        player.getCurrentServer().ifPresent(server -> server.sendPluginMessage(CHANNEL, message));
+    }
+
+    @Subscribe
+    public void onPluginMessage(PluginMessageEvent event) {
+        // Verdicts only ever travel from the proxy to a backend; never forward one.
+        if (CHANNEL.getId().equals(event.getIdentifier().getId())) {
+            event.setResult(PluginMessageEvent.ForwardResult.handled());
+        }
+    }
+}
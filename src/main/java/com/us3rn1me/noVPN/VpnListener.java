@@ -1,46 +1,154 @@
 package com.us3rn1me.noVPN;
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.LoginEvent;
 import com.velocitypowered.api.proxy.Player;
-import net.kyori.adventure.text.minimessage.MiniMessage;
+import com.velocitypowered.api.proxy.ProxyServer;
 import org.slf4j.Logger;
 
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Intercepts login events and kicks players whose IP is in the VPN block lists.
+ *
+ * Logins that arrive before any list data is loaded are handled according to
+ * the configured {@link Config.StartupPolicy}; a held login is parked with an
+ * async {@link EventTask} so no event thread waits on the download.
+ *
+ * Allowlisted players and addresses are let through before anything else.
+ * The bypass permission is only consulted for flagged addresses, and its
+ * result is cached per player (see {@link BypassCache}).
+ *
+ * Addresses the lists let through are looked up with the optional
+ * {@link ReputationProvider}. Only a lookup that is not answered from its
+ * cache parks the login, again with an async {@link EventTask}.
+ *
+ * Players who joined before their IP was listed are caught by {@link #sweep},
+ * which runs after each refresh when {@code kick-online-players} is on.
  */
 public class VpnListener {
 
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final ProxyServer server;
     private final ConfigManager configManager;
     private final IpListManager ipListManager;
+    private final ReputationProvider reputationProvider;
     private final Logger logger;
+    private final BypassCache bypassCache = new BypassCache();
 
-    public VpnListener(ConfigManager configManager, IpListManager ipListManager, Logger logger) {
+    public VpnListener(ProxyServer server, ConfigManager configManager, IpListManager ipListManager,
+                       ReputationProvider reputationProvider, Logger logger) {
+        this.server = server;
         this.configManager = configManager;
         this.ipListManager = ipListManager;
+        this.reputationProvider = reputationProvider;
         this.logger = logger;
     }
 
     @Subscribe
-    public void onLogin(LoginEvent event) {
-        Player player = event.getPlayer();
+    public EventTask onLogin(LoginEvent event) {
         Config config = configManager.get();
 
-        // Skip the check if the player has the bypass permission.
-        if (player.hasPermission(config.getBypassPermission()))
-            return;
+        // Trusted players and networks skip the lists and the permission lookup.
+        Player player = event.getPlayer();
+        if (configManager.getAllowlist().contains(player.getUniqueId(), player.getRemoteAddress().getAddress()))
+            return null;
+
+        if (!ipListManager.isReady()) {
+            switch (config.getStartupPolicy()) {
+                case DENY -> {
+                    event.setResult(
+                            LoginEvent.ComponentResult.denied(configManager.getKickMessages().startupComponent()));
+                    return null;
+                }
+                case HOLD -> {
+                    return EventTask.resumeWhenComplete(
+                            ipListManager.whenReady(config.getStartupHoldSeconds())
+                                    .thenCompose(ignored -> check(event, configManager.get())));
+                }
+                case ALLOW -> {
+                }
+            }
+        }
+
+        CompletableFuture<Void> checked = check(event, config);
+        return checked.isDone() ? null : EventTask.resumeWhenComplete(checked);
+    }
+
+    /**
+     * Checks the login against the lists and then the reputation provider.
+     * Completes at once unless a reputation lookup has to go out.
+     */
+    private CompletableFuture<Void> check(LoginEvent event, Config config) {
+        InetAddress address = event.getPlayer().getRemoteAddress().getAddress();
+        ipListManager.getMetrics().recordCheck();
 
-        String ip = player.getRemoteAddress().getAddress().getHostAddress();
+        // Allocation-free for addresses that are not listed, which is nearly all of them.
+        if (ipListManager.isBlocked(address)) {
+            deny(event, config, address, ipListManager.sourcesOf(address));
+            return DONE;
+        }
+
+        CompletableFuture<Boolean> reputation = reputationProvider.check(address, config);
+        if (reputation.isDone() && !reputation.join())
+            return DONE;
+        return reputation.thenAccept(flagged -> {
+            if (flagged) {
+                deny(event, config, address, List.of(reputationProvider.getSourceName(config)));
+            }
+        });
+    }
 
-        if (!ipListManager.isBlocked(ip))
+    private void deny(LoginEvent event, Config config, InetAddress address, List<String> sources) {
+        Player player = event.getPlayer();
+        Metrics metrics = ipListManager.getMetrics();
+
+        // Skip the check if the player has the bypass permission.
+        if (hasBypass(player, config)) {
+            metrics.recordBypass();
             return;
+        }
+        metrics.recordBlock();
 
+        String ip = address.getHostAddress();
         if (config.isLogBlocked()) {
             logger.info("Blocked {} ({}) — VPN/proxy detected.", player.getUsername(), ip);
         }
 
         event.setResult(
-                LoginEvent.ComponentResult.denied(
-                        MiniMessage.miniMessage().deserialize(config.getKickMessage())));
+                LoginEvent.ComponentResult.denied(configManager.getKickMessages().component(ip, sources)));
+    }
+
+    /**
+     * Kicks online players whose address the latest refresh added to the
+     * lists. Called on the sweep thread; each player costs one lookup in the
+     * diff, and players with the bypass permission are left alone.
+     */
+    public void sweep(SnapshotDiff diff) {
+        Config config = configManager.get();
+        if (!config.isKickOnlinePlayers())
+            return;
+
+        for (Player player : server.getAllPlayers()) {
+            InetAddress address = player.getRemoteAddress().getAddress();
+            if (!diff.isAdded(address) || configManager.getAllowlist().contains(player.getUniqueId(), address)
+                    || hasBypass(player, config))
+                continue;
+
+            String ip = address.getHostAddress();
+            if (config.isLogBlocked()) {
+                logger.info("Kicked {} ({}) — IP newly listed as VPN/proxy.", player.getUsername(), ip);
+            }
+            player.disconnect(configManager.getKickMessages().component(ip, ipListManager.sourcesOf(address)));
+        }
+    }
+
+    private boolean hasBypass(Player player, Config config) {
+        return bypassCache.hasBypass(player.getUniqueId(), config,
+                () -> player.hasPermission(config.getBypassPermission()));
     }
 }
@@ -1,11 +1,17 @@
 package com.us3rn1me.noVPN.bukkit;
 
+import com.us3rn1me.noVPN.Allowlist;
+import com.us3rn1me.noVPN.AsnDatabase;
 import com.us3rn1me.noVPN.Config;
+import com.us3rn1me.noVPN.KickMessages;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Loads and exposes plugin configuration from Bukkit's built-in
@@ -20,6 +26,8 @@ public class BukkitConfigManager {
 
     private final JavaPlugin plugin;
     private Config config;
+    private KickMessages kickMessages;
+    private Allowlist allowlist;
 
     public BukkitConfigManager(JavaPlugin plugin) {
         this.plugin = plugin;
@@ -41,18 +49,101 @@ public class BukkitConfigManager {
         boolean logBlocked = raw.getBoolean("log-blocked", true);
         int refreshInterval = raw.getInt("refresh-interval-minutes", 60);
         int connectTimeout = raw.getInt("connect-timeout-seconds", 10);
+        int maxConcurrentDownloads = raw.getInt("max-concurrent-downloads", 8);
+        int refreshDeadline = raw.getInt("refresh-deadline-seconds", 120);
         List<String> lists = raw.getStringList("lists");
+        int minMatchingSources = raw.getInt("min-matching-sources", 1);
+
+        Config.StartupPolicy startupPolicy = Config.StartupPolicy.parse(raw.getString("startup-policy", "hold"));
+        int startupHold = raw.getInt("startup-hold-seconds", 10);
+        String startupKickMessage = raw.getString("startup-kick-message",
+                "<yellow>The server is still starting up, please try again in a moment.");
+
+        Map<String, String> sourceKickMessages = new LinkedHashMap<>();
+        ConfigurationSection sourceMessages = raw.getConfigurationSection("source-kick-messages");
+        if (sourceMessages != null) {
+            for (String match : sourceMessages.getKeys(false)) {
+                sourceKickMessages.put(match, sourceMessages.getString(match));
+            }
+        }
 
         if (lists.isEmpty()) {
             lists = Collections.emptyList();
         }
 
+        String metricsAddress = raw.getString("metrics-address", "127.0.0.1");
+        int metricsPort = raw.getInt("metrics-port", 0);
+
+        Config.SnapshotEngine snapshotEngine = Config.SnapshotEngine.parse(raw.getString("snapshot-engine", "index"));
+
+        boolean kickOnlinePlayers = raw.getBoolean("kick-online-players", false);
+
+        List<String> allowlist = raw.getStringList("allowlist");
+        int bypassCacheSeconds = raw.getInt("bypass-cache-seconds", 300);
+
+        Config.SnapshotMode snapshotMode = Config.SnapshotMode.parse(
+                raw.getString("snapshot-mode", "standalone"));
+        String sharedSnapshotDirectory = raw.getString("shared-snapshot-directory", "");
+
+        // forward-verdicts only applies to the proxy.
+        boolean trustProxy = raw.getBoolean("trust-proxy", false);
+        int trustProxyTimeoutSeconds = raw.getInt("trust-proxy-timeout-seconds", 10);
+        String verdictSecret = raw.getString("verdict-secret", "");
+
+        String reputationUrl = raw.getString("reputation-url", "");
+        String reputationPattern = raw.getString("reputation-pattern", "\"proxy\"\\s*:\\s*(true|\"yes\")");
+        int reputationBudgetMillis = raw.getInt("reputation-budget-millis", 1000);
+        int reputationMaxInFlight = raw.getInt("reputation-max-in-flight", 8);
+        int reputationCacheMinutes = raw.getInt("reputation-cache-minutes", 1440);
+        int reputationCacheSize = raw.getInt("reputation-cache-size", 50000);
+
+        List<String> asnDatabases = raw.getStringList("asn-databases");
+        List<String> blockedAsns = raw.getStringList("blocked-asns");
+        List<String> blockedCountries = raw.getStringList("blocked-countries");
+
         config = new Config(kickMessage, bypassPermission, logBlocked,
-                refreshInterval, connectTimeout, lists);
+                refreshInterval, connectTimeout, maxConcurrentDownloads, refreshDeadline,
+                lists, minMatchingSources, startupPolicy, startupHold, startupKickMessage,
+                sourceKickMessages, metricsAddress, metricsPort, snapshotEngine, kickOnlinePlayers,
+                allowlist, bypassCacheSeconds, snapshotMode, sharedSnapshotDirectory,
+                false, trustProxy, trustProxyTimeoutSeconds, reputationUrl, reputationPattern,
+                reputationBudgetMillis, reputationMaxInFlight, reputationCacheMinutes, reputationCacheSize,
+                asnDatabases, blockedAsns, blockedCountries, verdictSecret);
+        kickMessages = KickMessages.compile(config);
+        this.allowlist = Allowlist.compile(config);
+        for (String entry : this.allowlist.getRejected()) {
+            plugin.getLogger().warning("Ignoring allowlist entry \"" + entry
+                    + "\": not a UUID, IP address or CIDR block.");
+        }
+        for (String entry : config.getBlockedAsns()) {
+            if (AsnDatabase.parseAsn(entry) < 0) {
+                plugin.getLogger().warning("Ignoring blocked-asns entry \"" + entry + "\": not an ASN.");
+            }
+        }
+        for (String entry : config.getBlockedCountries()) {
+            if (AsnDatabase.packCountry(entry) == 0) {
+                plugin.getLogger().warning("Ignoring blocked-countries entry \"" + entry
+                        + "\": not a two-letter country code.");
+            }
+        }
+        if (config.isTrustProxy() && config.getVerdictSecret().isEmpty()) {
+            plugin.getLogger().warning("trust-proxy is enabled but verdict-secret is empty; "
+                    + "every verdict from the proxy will be rejected.");
+        }
     }
 
     /** Returns the currently loaded configuration. */
     public Config get() {
         return config;
     }
+
+    /** Returns the kick messages of the current configuration, parsed once per load. */
+    public KickMessages getKickMessages() {
+        return kickMessages;
+    }
+
+    /** Returns the allowlist of the current configuration, parsed once per load. */
+    public Allowlist getAllowlist() {
+        return allowlist;
+    }
 }
@@ -3,6 +3,9 @@ package com.us3rn1me.noVPN.bukkit;
 import com.tcoded.folialib.FoliaLib;
 import com.us3rn1me.noVPN.BuildConstants;
 import com.us3rn1me.noVPN.IpListManager;
+import com.us3rn1me.noVPN.MetricsExporter;
+import com.us3rn1me.noVPN.ReputationProvider;
+import com.us3rn1me.noVPN.Verdict;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -17,7 +20,10 @@ public class BukkitNoVPN extends JavaPlugin {
 
     private BukkitConfigManager configManager;
     private IpListManager ipListManager;
+    private ReputationProvider reputationProvider;
+    private MetricsExporter metricsExporter;
     private FoliaLib foliaLib;
+    private BukkitVerdictListener verdictListener;
 
     @Override
     public void onEnable() {
@@ -26,15 +32,30 @@ public class BukkitNoVPN extends JavaPlugin {
         configManager = new BukkitConfigManager(this);
         configManager.load();
 
-        ipListManager = new IpListManager(getLogger());
-        ipListManager.start(configManager.get());
+        if (configManager.get().isTrustProxy()) {
+            // The proxy has checked every player already; no lists, lookups or metrics here.
+            verdictListener = new BukkitVerdictListener(this, configManager);
+            getServer().getMessenger().registerIncomingPluginChannel(this, Verdict.CHANNEL, verdictListener);
+            getServer().getPluginManager().registerEvents(verdictListener, this);
+            getLogger().info("Trusting the proxy's verdicts; IP lists are not loaded.");
+        } else {
+            ipListManager = new IpListManager(getLogger(), getDataFolder().toPath());
+            reputationProvider = new ReputationProvider(getLogger(), getDataFolder().toPath());
+            reputationProvider.start(configManager.get());
+            BukkitVpnListener listener = new BukkitVpnListener(this, configManager, ipListManager,
+                    reputationProvider);
+            ipListManager.setSnapshotListener(listener::sweep);
+            ipListManager.start(configManager.get());
+            getServer().getPluginManager().registerEvents(listener, this);
 
-        getServer().getPluginManager().registerEvents(
-                new BukkitVpnListener(configManager, ipListManager), this);
+            metricsExporter = new MetricsExporter(ipListManager, getLogger());
+            metricsExporter.start(configManager.get());
+        }
 
         PluginCommand cmd = getCommand("novpn");
         if (cmd != null) {
-            BukkitNoVPNCommand executor = new BukkitNoVPNCommand(configManager, ipListManager);
+            BukkitNoVPNCommand executor = new BukkitNoVPNCommand(configManager, ipListManager, foliaLib,
+                    reputationProvider, verdictListener);
             cmd.setExecutor(executor);
             cmd.setTabCompleter(executor);
         }
@@ -44,9 +65,18 @@ public class BukkitNoVPN extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+        }
         if (ipListManager != null) {
             ipListManager.shutdown();
         }
+        if (reputationProvider != null) {
+            reputationProvider.shutdown();
+        }
+        if (verdictListener != null) {
+            getServer().getMessenger().unregisterIncomingPluginChannel(this);
+        }
         if (foliaLib != null) {
             foliaLib.getScheduler().cancelAllTasks();
         }
@@ -1,16 +1,25 @@
 package com.us3rn1me.noVPN.bukkit;
 
+import com.tcoded.folialib.FoliaLib;
 import com.us3rn1me.noVPN.BuildConstants;
+import com.us3rn1me.noVPN.Config;
 import com.us3rn1me.noVPN.IpListManager;
+import com.us3rn1me.noVPN.Metrics;
+import com.us3rn1me.noVPN.ReputationProvider;
+import com.us3rn1me.noVPN.Units;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles the {@code /novpn} command for in-game administration.
@@ -18,19 +27,34 @@ import java.util.List;
  * <p>
  * Subcommands:
  * <ul>
- * <li>{@code /novpn reload} — reloads config and re-fetches IP lists</li>
+ * <li>{@code /novpn reload} — reloads config and re-fetches IP lists in the background</li>
  * <li>{@code /novpn check <ip>} — checks whether an IP is blocked</li>
+ * <li>{@code /novpn explain <ip>} — lists every source that flags an IP</li>
  * <li>{@code /novpn info} — prints version and list statistics</li>
+ * <li>{@code /novpn stats} — prints login counters, lookup latency and per-source fetch results</li>
  * </ul>
+ *
+ * <p>
+ * On a server that trusts the proxy's verdicts there are no lists, so
+ * {@code check}, {@code explain} and {@code stats} point to the proxy instead.
  */
 public class BukkitNoVPNCommand implements CommandExecutor, TabCompleter {
 
     private final BukkitConfigManager configManager;
+    // Both null when the server trusts the proxy's verdicts
     private final IpListManager ipListManager;
+    private final FoliaLib foliaLib;
+    private final ReputationProvider reputationProvider;
+    // Non-null when the server trusts the proxy's verdicts instead of loading lists
+    private final BukkitVerdictListener verdictListener;
 
-    public BukkitNoVPNCommand(BukkitConfigManager configManager, IpListManager ipListManager) {
+    public BukkitNoVPNCommand(BukkitConfigManager configManager, IpListManager ipListManager, FoliaLib foliaLib,
+                              ReputationProvider reputationProvider, BukkitVerdictListener verdictListener) {
         this.configManager = configManager;
         this.ipListManager = ipListManager;
+        this.foliaLib = foliaLib;
+        this.reputationProvider = reputationProvider;
+        this.verdictListener = verdictListener;
     }
 
     @Override
@@ -45,10 +69,18 @@ public class BukkitNoVPNCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        switch (args[0].toLowerCase()) {
+        String subcommand = args[0].toLowerCase();
+        if (verdictListener != null && !subcommand.equals("reload") && !subcommand.equals("info")) {
+            sendTrustedUsage(sender, subcommand);
+            return true;
+        }
+
+        switch (subcommand) {
             case "reload" -> handleReload(sender);
             case "check" -> handleCheck(sender, args);
+            case "explain" -> handleExplain(sender, args);
             case "info" -> handleInfo(sender);
+            case "stats" -> handleStats(sender);
             default -> sendUsage(sender);
         }
 
@@ -60,7 +92,9 @@ public class BukkitNoVPNCommand implements CommandExecutor, TabCompleter {
         if (!sender.hasPermission("novpn.admin"))
             return Collections.emptyList();
         if (args.length == 1)
-            return Arrays.asList("reload", "check", "info");
+            return verdictListener != null
+                    ? Arrays.asList("reload", "info")
+                    : Arrays.asList("reload", "check", "explain", "info", "stats");
         return Collections.emptyList();
     }
 
@@ -69,11 +103,37 @@ public class BukkitNoVPNCommand implements CommandExecutor, TabCompleter {
     private void handleReload(CommandSender sender) {
         sender.sendMessage(ChatColor.GRAY + "Reloading config and IP lists...");
         configManager.load();
-        ipListManager.refresh(configManager.get());
-        ipListManager.reconfigure(configManager.get());
-        sender.sendMessage(ChatColor.GREEN + "Done! Loaded "
-                + ChatColor.WHITE + ipListManager.getIpCount() + ChatColor.GREEN + " IPs and "
-                + ChatColor.WHITE + ipListManager.getCidrCount() + ChatColor.GREEN + " CIDR ranges.");
+        Config config = configManager.get();
+        if (verdictListener != null) {
+            sender.sendMessage(ChatColor.GREEN + "Config reloaded. The proxy's verdicts are trusted, "
+                    + "so there are no lists to fetch.");
+            return;
+        }
+        CompletableFuture<Void> reconfigured = ipListManager.reconfigure(config);
+
+        // Never download on the main thread; concurrent reloads share one refresh.
+        sender.sendMessage(ChatColor.GRAY + "Config reloaded. Fetching " + ChatColor.WHITE
+                + config.getLists().size() + ChatColor.GRAY + " lists in the background...");
+        long begin = System.nanoTime();
+        CompletableFuture.allOf(reconfigured, ipListManager.requestRefresh(config)).whenComplete((ignored, error) -> {
+            String message = error != null
+                    ? ChatColor.RED + "Refreshing the IP lists failed: " + ChatColor.WHITE + error.getMessage()
+                    : ChatColor.GREEN + "Done! Loaded "
+                            + ChatColor.WHITE + ipListManager.getIpCount() + ChatColor.GREEN + " IPs and "
+                            + ChatColor.WHITE + ipListManager.getCidrCount() + ChatColor.GREEN + " CIDR ranges in "
+                            + ChatColor.WHITE + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms"
+                            + ChatColor.GREEN + ".";
+            reply(sender, message);
+        });
+    }
+
+    /** Sends a message from a background thread on the thread that owns the sender. */
+    private void reply(CommandSender sender, String message) {
+        if (sender instanceof Player player) {
+            foliaLib.getScheduler().runAtEntity(player, task -> sender.sendMessage(message));
+        } else {
+            foliaLib.getScheduler().runNextTick(task -> sender.sendMessage(message));
+        }
     }
 
     private void handleCheck(CommandSender sender, String[] args) {
@@ -89,17 +149,123 @@ public class BukkitNoVPNCommand implements CommandExecutor, TabCompleter {
         }
     }
 
+    private void handleExplain(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            sender.sendMessage(ChatColor.RED + "Usage: /novpn explain <ip>");
+            return;
+        }
+
+        String ip = args[1];
+        IpListManager.Explanation result = ipListManager.explain(ip);
+
+        if (result == null) {
+            sender.sendMessage(ChatColor.RED + ip + " is not a valid IP address.");
+            return;
+        }
+
+        if (result.sources().isEmpty()) {
+            sender.sendMessage(ChatColor.GREEN + ip + " is not in any block list."
+                    + ChatColor.GRAY + " (lookup: " + result.lookupNanos() + " ns)");
+            return;
+        }
+
+        String verdict = result.blocked()
+                ? ChatColor.RED + "blocked"
+                : ChatColor.YELLOW + "allowed (below min-matching-sources)";
+        sender.sendMessage(ChatColor.AQUA + ip + " matched " + ChatColor.WHITE + result.entry()
+                + ChatColor.AQUA + " in " + ChatColor.WHITE + result.sources().size()
+                + ChatColor.AQUA + " source(s) — " + verdict
+                + ChatColor.GRAY + " (lookup: " + result.lookupNanos() + " ns)");
+        for (String name : result.sources()) {
+            sender.sendMessage(ChatColor.GRAY + " - " + ChatColor.WHITE + name);
+        }
+    }
+
     private void handleInfo(CommandSender sender) {
+        if (verdictListener != null) {
+            long generation = verdictListener.getLastGeneration();
+            sender.sendMessage(ChatColor.AQUA + "NoVPN v" + ChatColor.WHITE + BuildConstants.VERSION
+                    + ChatColor.AQUA + " — trusting the proxy: " + ChatColor.WHITE
+                    + verdictListener.getReceived() + ChatColor.AQUA + " verdict(s) received, " + ChatColor.WHITE
+                    + verdictListener.getRejected() + ChatColor.AQUA + " rejected"
+                    + (generation < 0 ? "." : ", latest from proxy snapshot generation "
+                            + ChatColor.WHITE + generation + ChatColor.AQUA + "."));
+            return;
+        }
         sender.sendMessage(ChatColor.AQUA + "NoVPN v" + ChatColor.WHITE + BuildConstants.VERSION
                 + ChatColor.AQUA + " — "
                 + ChatColor.WHITE + ipListManager.getIpCount() + ChatColor.AQUA + " IPs, "
-                + ChatColor.WHITE + ipListManager.getCidrCount() + ChatColor.AQUA + " CIDR ranges"
+                + ChatColor.WHITE + ipListManager.getCidrCount() + ChatColor.AQUA + " CIDR ranges, "
+                + ChatColor.WHITE + ipListManager.getIpv6RangeCount() + ChatColor.AQUA + " IPv6 /64 ranges"
                 + " from " + ChatColor.WHITE + configManager.get().getLists().size()
                 + ChatColor.AQUA + " source(s).");
+        sender.sendMessage(ChatColor.GRAY + "IP set memory: "
+                + ChatColor.WHITE + Units.formatBytes(ipListManager.getIpFootprintBytes())
+                + ChatColor.GRAY + " (" + ChatColor.WHITE + "~"
+                + Units.formatBytes(ipListManager.getIpStringFootprintBytes())
+                + ChatColor.GRAY + " as strings)"
+                + (ipListManager.isSnapshotMapped() ? ", memory-mapped." : "."));
+        if (ipListManager.getNetworkRangeCount() > 0) {
+            sender.sendMessage(ChatColor.GRAY + "Network database: "
+                    + ChatColor.WHITE + ipListManager.getNetworkRangeCount() + ChatColor.GRAY + " ranges, "
+                    + ChatColor.WHITE + ipListManager.getBlockedNetworkRangeCount() + ChatColor.GRAY
+                    + " blocked by ASN or country.");
+        }
+    }
+
+    private void handleStats(CommandSender sender) {
+        Metrics metrics = ipListManager.getMetrics();
+        sender.sendMessage(ChatColor.AQUA + "Logins checked: " + ChatColor.WHITE + metrics.getChecks()
+                + ChatColor.AQUA + ", blocked: " + ChatColor.WHITE + metrics.getBlocks()
+                + ChatColor.AQUA + ", bypassed: " + ChatColor.WHITE + metrics.getBypasses());
+        if (metrics.getLookups() > 0) {
+            sender.sendMessage(ChatColor.GRAY + "Lookup latency: p50 ≤ "
+                    + ChatColor.WHITE + Units.formatNanos(metrics.getLookupPercentileNanos(50))
+                    + ChatColor.GRAY + ", p99 ≤ "
+                    + ChatColor.WHITE + Units.formatNanos(metrics.getLookupPercentileNanos(99))
+                    + ChatColor.GRAY + ", max ≤ "
+                    + ChatColor.WHITE + Units.formatNanos(metrics.getLookupPercentileNanos(100))
+                    + ChatColor.GRAY + " over " + ChatColor.WHITE + metrics.getLookups() + ChatColor.GRAY + " lookups");
+        }
+        if (!configManager.get().getReputationUrl().isEmpty()) {
+            sender.sendMessage(ChatColor.GRAY + "Reputation lookups: " + ChatColor.WHITE + reputationProvider.getLookups()
+                    + ChatColor.GRAY + ", flagged: " + ChatColor.WHITE + reputationProvider.getFlagged()
+                    + ChatColor.GRAY + ", from cache: " + ChatColor.WHITE + reputationProvider.getCacheHits()
+                    + ChatColor.GRAY + ", failed: " + ChatColor.WHITE + reputationProvider.getFailures()
+                    + ChatColor.GRAY + ", skipped: " + ChatColor.WHITE + reputationProvider.getSkipped()
+                    + (reputationProvider.isBreakerOpen() ? ChatColor.RED + " (breaker open)" : ""));
+        }
+        sender.sendMessage(ChatColor.GRAY + "Snapshot: " + ChatColor.WHITE
+                + Units.formatBytes(ipListManager.getFootprintBytes()) + ChatColor.GRAY
+                + (ipListManager.isSnapshotMapped() ? " (memory-mapped)" : " (heap)")
+                + (ipListManager.getBitmapFootprintBytes() >= 0
+                        ? ", bitmap engine: " + ChatColor.WHITE
+                                + Units.formatBytes(ipListManager.getBitmapFootprintBytes())
+                        : ""));
+
+        for (Map.Entry<String, Metrics.SourceStats> entry
+                : metrics.getSourceStats(configManager.get().getLists())) {
+            Metrics.SourceStats stats = entry.getValue();
+            String result = stats.failed()
+                    ? ChatColor.RED + "failed: " + stats.lastError()
+                    : ChatColor.WHITE + String.valueOf(stats.entries()) + ChatColor.GRAY + " entries, "
+                            + ChatColor.WHITE + (stats.notModified() ? "unchanged" : Units.formatBytes(stats.bytes()));
+            String lastError = !stats.failed() && stats.lastError() != null
+                    ? ChatColor.DARK_GRAY + " (last error: " + stats.lastError() + ")"
+                    : "";
+            sender.sendMessage(ChatColor.GRAY + " - " + ChatColor.WHITE + entry.getKey()
+                    + ChatColor.GRAY + " in " + ChatColor.WHITE + Units.formatNanos(stats.fetchNanos())
+                    + ChatColor.GRAY + ": " + result + lastError);
+        }
     }
 
     private void sendUsage(CommandSender sender) {
         sender.sendMessage(ChatColor.YELLOW + "Usage: " + ChatColor.WHITE
-                + "/novpn <reload|check <ip>|info>");
+                + "/novpn <reload|check <ip>|explain <ip>|info|stats>");
+    }
+
+    private void sendTrustedUsage(CommandSender sender, String subcommand) {
+        sender.sendMessage(ChatColor.YELLOW + "This server trusts the proxy's verdicts and loads no IP lists; run "
+                + ChatColor.WHITE + "/novpn " + subcommand + ChatColor.YELLOW + " on the proxy instead.");
     }
 }
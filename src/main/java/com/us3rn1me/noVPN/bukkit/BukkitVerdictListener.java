@@ -0,0 +1,112 @@
+package com.us3rn1me.noVPN.bukkit;
+
+import com.us3rn1me.noVPN.Verdict;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Receives the proxy's {@link Verdict}s when the backend runs with
+ * {@code trust-proxy}, in place of {@link BukkitVpnListener} and the lists.
+ *
+ * The proxy has already refused every flagged player, so a verdict only
+ * confirms that the player came through a proxy running NoVPN. Verdicts that
+ * are unsigned, signed with another {@code verdict-secret}, stale or about
+ * another player are rejected and counted. With
+ * {@code trust-proxy-timeout-seconds} set, a player for whom no verdict
+ * arrives in time is kicked, so a backend that is reachable directly does not
+ * let unchecked players in.
+ */
+public class BukkitVerdictListener implements Listener, PluginMessageListener {
+
+    private static final String UNVERIFIED_MESSAGE = ChatColor.RED + "Please connect through the proxy.";
+
+    private final BukkitNoVPN plugin;
+    private final BukkitConfigManager configManager;
+
+    // Latest verdict of each online player
+    private final Map<UUID, Verdict> verdicts = new ConcurrentHashMap<>();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile long lastGeneration = -1;
+
+    public BukkitVerdictListener(BukkitNoVPN plugin, BukkitConfigManager configManager) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+    }
+
+    @Override
+    public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+        if (!Verdict.CHANNEL.equals(channel))
+            return;
+
+        Verdict verdict = Verdict.decode(message, configManager.get().getVerdictSecret(),
+                System.currentTimeMillis());
+        if (verdict == null || !verdict.player().equals(player.getUniqueId())) {
+            rejected.increment();
+            return;
+        }
+
+        verdicts.put(verdict.player(), verdict);
+        received.increment();
+        lastGeneration = verdict.generation();
+        if (verdict.listed() && configManager.get().isLogBlocked()) {
+            Logger.getLogger("NoVPN").info(String.format(
+                    "%s is listed as VPN/proxy but was let through by the proxy.", player.getName()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        int timeout = configManager.get().getTrustProxyTimeoutSeconds();
+        if (timeout <= 0)
+            return;
+
+        Player player = event.getPlayer();
+        plugin.getFoliaLib().getScheduler().runLaterAsync(() -> {
+            if (verdicts.containsKey(player.getUniqueId()))
+                return;
+
+            plugin.getFoliaLib().getScheduler().runAtEntity(player, task -> {
+                if (!player.isOnline() || verdicts.containsKey(player.getUniqueId()))
+                    return;
+
+                Logger.getLogger("NoVPN").warning(String.format(
+                        "Kicked %s — no verdict from the proxy within %d s.", player.getName(), timeout));
+                player.kickPlayer(UNVERIFIED_MESSAGE);
+            });
+        }, timeout, TimeUnit.SECONDS);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        verdicts.remove(event.getPlayer().getUniqueId());
+    }
+
+    /** Returns the number of verdicts received since start. */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /** Returns the number of verdicts rejected since start: unsigned, forged, stale or misaddressed. */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /** Returns the proxy's snapshot generation in the latest verdict, or -1 if none arrived yet. */
+    public long getLastGeneration() {
+        return lastGeneration;
+    }
+}
@@ -1,14 +1,20 @@
 package com.us3rn1me.noVPN.bukkit;
 
+import com.us3rn1me.noVPN.BypassCache;
 import com.us3rn1me.noVPN.Config;
 import com.us3rn1me.noVPN.IpListManager;
-import net.kyori.adventure.text.minimessage.MiniMessage;
-import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import com.us3rn1me.noVPN.Metrics;
+import com.us3rn1me.noVPN.ReputationProvider;
+import com.us3rn1me.noVPN.SnapshotDiff;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -16,32 +22,77 @@ import java.util.logging.Logger;
  *
  * {@link AsyncPlayerPreLoginEvent} fires off the main thread on both Spigot and
  * Folia, which is exactly where we want our check — no thread concerns, no lag
- * on the main thread, and no need to defer the decision to a callback.
+ * on the main thread, and no need to defer the decision to a callback. That
+ * also means a login held by the {@code hold} startup policy can simply wait
+ * on this thread.
+ *
+ * Allowlisted players and addresses are let through before anything else.
+ * The player object does not exist yet at pre-login, so the bypass
+ * permission only applies to the online sweep, where it is cached per
+ * player (see {@link BypassCache}).
+ *
+ * Addresses the lists let through are looked up with the optional
+ * {@link ReputationProvider}; this thread simply waits for the answer, which
+ * the provider bounds by its latency budget.
+ *
+ * Players who joined before their IP was listed are caught by {@link #sweep},
+ * which runs after each refresh when {@code kick-online-players} is on.
  */
 public class BukkitVpnListener implements Listener {
 
-    private static final MiniMessage MM = MiniMessage.miniMessage();
-    private static final LegacyComponentSerializer LEGACY = LegacyComponentSerializer.legacySection();
-
+    private final BukkitNoVPN plugin;
     private final BukkitConfigManager configManager;
     private final IpListManager ipListManager;
+    private final ReputationProvider reputationProvider;
+    private final BypassCache bypassCache = new BypassCache();
 
-    public BukkitVpnListener(BukkitConfigManager configManager, IpListManager ipListManager) {
+    public BukkitVpnListener(BukkitNoVPN plugin, BukkitConfigManager configManager, IpListManager ipListManager,
+                             ReputationProvider reputationProvider) {
+        this.plugin = plugin;
         this.configManager = configManager;
         this.ipListManager = ipListManager;
+        this.reputationProvider = reputationProvider;
     }
 
     @EventHandler(priority = EventPriority.LOWEST)
     public void onPreLogin(AsyncPlayerPreLoginEvent event) {
         Config config = configManager.get();
 
-        String ip = event.getAddress().getHostAddress();
+        // Trusted players and networks skip the lists entirely.
+        if (configManager.getAllowlist().contains(event.getUniqueId(), event.getAddress()))
+            return;
 
-        if (!ipListManager.isBlocked(ip))
+        if (!ipListManager.isReady()) {
+            switch (config.getStartupPolicy()) {
+                case DENY -> {
+                    event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER,
+                            configManager.getKickMessages().startupLegacy());
+                    return;
+                }
+                case HOLD -> ipListManager.awaitReady(config.getStartupHoldSeconds());
+                case ALLOW -> {
+                }
+            }
+        }
+
+        InetAddress address = event.getAddress();
+        Metrics metrics = ipListManager.getMetrics();
+        metrics.recordCheck();
+
+        List<String> sources;
+        if (ipListManager.isBlocked(address)) {
+            sources = ipListManager.sourcesOf(address);
+        } else if (reputationProvider.check(address, config).join()) {
+            sources = List.of(reputationProvider.getSourceName(config));
+        } else {
             return;
+        }
+        metrics.recordBlock();
 
-        // Convert MiniMessage format to legacy string for broad Spigot compatibility.
-        String legacyKick = LEGACY.serialize(MM.deserialize(config.getKickMessage()));
+        String ip = address.getHostAddress();
+
+        // Legacy string (precompiled from MiniMessage) for broad Spigot compatibility.
+        String legacyKick = configManager.getKickMessages().legacy(ip, sources);
 
         if (config.isLogBlocked()) {
             Logger.getLogger("NoVPN").info(
@@ -51,4 +102,38 @@ public class BukkitVpnListener implements Listener {
 
         event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, legacyKick);
     }
+
+    /**
+     * Kicks online players whose address the latest refresh added to the
+     * lists. The diff is probed on the sweep thread; the permission check and
+     * the kick itself run on each player's own thread through FoliaLib.
+     */
+    public void sweep(SnapshotDiff diff) {
+        Config config = configManager.get();
+        if (!config.isKickOnlinePlayers())
+            return;
+
+        for (Player player : List.copyOf(plugin.getServer().getOnlinePlayers())) {
+            InetSocketAddress socket = player.getAddress();
+            if (socket == null || !diff.isAdded(socket.getAddress())
+                    || configManager.getAllowlist().contains(player.getUniqueId(), socket.getAddress()))
+                continue;
+
+            InetAddress address = socket.getAddress();
+            String ip = address.getHostAddress();
+            String legacyKick = configManager.getKickMessages().legacy(ip, ipListManager.sourcesOf(address));
+            plugin.getFoliaLib().getScheduler().runAtEntity(player, task -> {
+                if (!player.isOnline() || bypassCache.hasBypass(player.getUniqueId(), config,
+                        () -> player.hasPermission(config.getBypassPermission())))
+                    return;
+
+                if (config.isLogBlocked()) {
+                    Logger.getLogger("NoVPN").info(
+                            String.format("Kicked %s (%s) — IP newly listed as VPN/proxy.",
+                                    player.getName(), ip));
+                }
+                player.kickPlayer(legacyKick);
+            });
+        }
+    }
 }
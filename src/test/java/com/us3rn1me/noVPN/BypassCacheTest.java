@@ -0,0 +1,63 @@
+package com.us3rn1me.noVPN;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BypassCacheTest {
+
+    @Test
+    void cachesResultsPerPermission() {
+        BypassCache cache = new BypassCache();
+        UUID player = UUID.randomUUID();
+        AtomicInteger checks = new AtomicInteger();
+        TestConfig config = new TestConfig();
+        config.bypassCacheSeconds = 60;
+
+        assertTrue(cache.hasBypass(player, config.build(), () -> checks.incrementAndGet() > 0));
+        assertTrue(cache.hasBypass(player, config.build(), () -> checks.incrementAndGet() < 0));
+        assertEquals(1, checks.get());
+
+        // A different permission node never reuses the cached answer.
+        config.bypassPermission = "novpn.other";
+        assertFalse(cache.hasBypass(player, config.build(), () -> checks.incrementAndGet() < 0));
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    void zeroTtlDisablesCaching() {
+        BypassCache cache = new BypassCache();
+        UUID player = UUID.randomUUID();
+        AtomicInteger checks = new AtomicInteger();
+        Config config = new TestConfig().build();
+
+        cache.hasBypass(player, config, () -> checks.incrementAndGet() > 0);
+        cache.hasBypass(player, config, () -> checks.incrementAndGet() > 0);
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    void keepsServingPastThePruneThreshold() {
+        BypassCache cache = new BypassCache();
+        TestConfig settings = new TestConfig();
+        settings.bypassCacheSeconds = 60;
+        Config config = settings.build();
+
+        UUID[] players = new UUID[20_000];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+            boolean bypass = i % 2 == 0;
+            assertEquals(bypass, cache.hasBypass(players[i], config, () -> bypass));
+        }
+        for (int i = 0; i < players.length; i++) {
+            assertEquals(i % 2 == 0, cache.hasBypass(players[i], config, () -> {
+                throw new AssertionError("not cached");
+            }));
+        }
+    }
+}
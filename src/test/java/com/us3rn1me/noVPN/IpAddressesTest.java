@@ -0,0 +1,49 @@
+package com.us3rn1me.noVPN;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IpAddressesTest {
+
+    /**
+     * {@link IpAddresses#packIpv4} relies on {@link Inet4Address#hashCode()}
+     * being the packed address; fail loudly if a JDK ever changes that.
+     */
+    @Test
+    void packIpv4MatchesGetAddress() throws Exception {
+        Random random = new Random(42);
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 100_000; i++) {
+            random.nextBytes(bytes);
+            Inet4Address address = (Inet4Address) InetAddress.getByAddress(bytes);
+            assertEquals(ByteBuffer.wrap(address.getAddress()).getInt(), IpAddresses.packIpv4(address),
+                    address.getHostAddress());
+        }
+    }
+
+    @Test
+    void packIpv4MatchesEdgeAddresses() throws Exception {
+        for (String text : new String[] { "0.0.0.0", "255.255.255.255", "127.0.0.1", "128.0.0.0", "1.2.3.4" }) {
+            Inet4Address address = (Inet4Address) InetAddress.getByName(text);
+            assertEquals((int) IpAddresses.parseIpv4(text), IpAddresses.packIpv4(address), text);
+        }
+    }
+
+    @Test
+    void toIpv6MapsIpv4Addresses() throws Exception {
+        long[] packed = new long[2];
+        IpAddresses.toIpv6(InetAddress.getByName("1.2.3.4"), packed);
+        assertEquals(0, packed[0]);
+        assertEquals(0xFFFF01020304L, packed[1]);
+
+        IpAddresses.toIpv6(InetAddress.getByName("2001:db8::1"), packed);
+        assertEquals(0x20010DB800000000L, packed[0]);
+        assertEquals(1, packed[1]);
+    }
+}
@@ -0,0 +1,339 @@
+package com.us3rn1me.noVPN;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs refreshes against a local stand-in HTTP server.
+ */
+class IpListManagerFetchTest {
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    // Released on tear-down so handlers that never answer let the server stop
+    private final CountDownLatch released = new CountDownLatch(1);
+    private IpListManager manager;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        manager = new IpListManager(Logger.getLogger("NoVPN"), HttpClient.newHttpClient(), null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        manager.shutdown();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    // ------------------------------------------------------------------
+
+    @Test
+    void fetchesSourcesInParallelWithinTheDeadline() {
+        int sources = 8;
+        List<String> lists = new ArrayList<>();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        for (int i = 0; i < sources; i++) {
+            String body = "10.0.0." + i + "\n";
+            lists.add(serve("/list-" + i, exchange -> {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                try {
+                    sleep(500);
+                    respond(exchange, 200, body);
+                } finally {
+                    concurrent.decrementAndGet();
+                }
+            }));
+        }
+
+        TestConfig config = new TestConfig();
+        config.lists = lists;
+        config.maxConcurrentDownloads = sources;
+        config.refreshDeadlineSeconds = 10;
+
+        long begin = System.nanoTime();
+        manager.refresh(config.build());
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        // One after another this would take 8 x 500 ms.
+        assertTrue(elapsedMs < 3000, "refresh took " + elapsedMs + " ms");
+        assertTrue(maxConcurrent.get() > 1, "sources were fetched one at a time");
+        assertEquals(sources, manager.getIpCount());
+        assertEquals(0, manager.getMetrics().getLastRefreshFailedSources());
+    }
+
+    @Test
+    void capsConcurrentDownloads() {
+        List<String> lists = new ArrayList<>();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        for (int i = 0; i < 6; i++) {
+            String body = "10.0.1." + i + "\n";
+            lists.add(serve("/capped-" + i, exchange -> {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                try {
+                    sleep(100);
+                    respond(exchange, 200, body);
+                } finally {
+                    concurrent.decrementAndGet();
+                }
+            }));
+        }
+
+        TestConfig config = new TestConfig();
+        config.lists = lists;
+        config.maxConcurrentDownloads = 2;
+        manager.refresh(config.build());
+
+        assertTrue(maxConcurrent.get() <= 2, maxConcurrent.get() + " downloads ran at once");
+        assertEquals(6, manager.getIpCount());
+    }
+
+    @Test
+    void slowOrFailingSourcesDoNotBlockTheOthers() {
+        String fast = serve("/fast", exchange -> respond(exchange, 200, "1.2.3.4\n5.6.7.8\n"));
+        String hanging = serve("/hanging", exchange -> {
+            awaitRelease();
+            respond(exchange, 200, "9.9.9.9\n");
+        });
+        String failing = serve("/failing", exchange -> respond(exchange, 500, "oops"));
+        String missing = "http://127.0.0.1:" + server.getAddress().getPort() + "/missing";
+        String alsoFast = serve("/also-fast", exchange -> respond(exchange, 200, "2001:db8::1\n"));
+
+        TestConfig config = new TestConfig();
+        config.lists = List.of(fast, hanging, failing, missing, alsoFast);
+        config.refreshDeadlineSeconds = 2;
+
+        long begin = System.nanoTime();
+        manager.refresh(config.build());
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        assertTrue(elapsedMs < 5000, "refresh took " + elapsedMs + " ms");
+        assertEquals(3, manager.getMetrics().getLastRefreshFailedSources());
+        assertTrue(manager.isBlocked("1.2.3.4"));
+        assertTrue(manager.isBlocked("5.6.7.8"));
+        assertTrue(manager.isBlocked("2001:db8::1"));
+        assertFalse(manager.isBlocked("9.9.9.9"));
+
+        Metrics.SourceStats stats = manager.getMetrics().getSourceStats().get(hanging);
+        assertTrue(stats.failed());
+        assertEquals("refresh deadline exceeded", stats.lastError());
+        assertTrue(manager.getMetrics().getSourceStats().get(failing).failed());
+        assertFalse(manager.getMetrics().getSourceStats().get(fast).failed());
+    }
+
+    @Test
+    void notModifiedReusesTheParsedSegment() {
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger bodies = new AtomicInteger();
+        String etagged = serve("/etag", exchange -> {
+            requests.incrementAndGet();
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            bodies.incrementAndGet();
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            respond(exchange, 200, "1.2.3.4\n10.0.0.0/8\n");
+        });
+        String dated = serve("/dated", exchange -> {
+            requests.incrementAndGet();
+            if ("Mon, 01 Jan 2024 00:00:00 GMT".equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            bodies.incrementAndGet();
+            exchange.getResponseHeaders().set("Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT");
+            respond(exchange, 200, "5.6.7.8\n");
+        });
+
+        TestConfig config = new TestConfig();
+        config.lists = List.of(etagged, dated);
+        manager.refresh(config.build());
+        long generation = manager.getGeneration();
+        manager.refresh(config.build());
+
+        assertEquals(4, requests.get());
+        assertEquals(2, bodies.get());
+        // Every source answered 304, so the published snapshot was kept as is.
+        assertEquals(generation, manager.getGeneration());
+        assertTrue(manager.isBlocked("1.2.3.4"));
+        assertTrue(manager.isBlocked("10.1.2.3"));
+        assertTrue(manager.isBlocked("5.6.7.8"));
+        assertTrue(manager.getMetrics().getSourceStats().get(etagged).notModified());
+        assertTrue(manager.getMetrics().getSourceStats().get(dated).notModified());
+    }
+
+    @Test
+    void inflatesCompressedBodies() {
+        AtomicInteger acceptsGzip = new AtomicInteger();
+        String gzip = serve("/gzip", exchange -> {
+            String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (accept != null && accept.contains("gzip")) {
+                acceptsGzip.incrementAndGet();
+            }
+            respond(exchange, "gzip", gzip("1.1.1.1\n"));
+        });
+        String zlib = serve("/deflate", exchange -> respond(exchange, "deflate", deflate("2.2.2.2\n", false)));
+        String rawDeflate = serve("/raw-deflate", exchange -> respond(exchange, "deflate", deflate("3.3.3.3\n", true)));
+        String gzFile = serve("/list.gz", exchange -> respond(exchange, null, gzip("4.4.4.4\n")));
+        String both = serve("/both.gz", exchange -> respond(exchange, "gzip", gzip(gzip("5.5.5.5\n"))));
+        // A .gz file labelled with its own encoding, as S3 or Apache's AddEncoding send it.
+        String labelled = serve("/labelled.gz", exchange -> respond(exchange, "gzip", gzip("6.6.6.6\n")));
+        String unknown = serve("/br", exchange -> respond(exchange, "br", new byte[] { 1, 2, 3 }));
+
+        TestConfig config = new TestConfig();
+        config.lists = List.of(gzip, zlib, rawDeflate, gzFile, both, labelled, unknown);
+        manager.refresh(config.build());
+
+        assertEquals(1, acceptsGzip.get());
+        for (String ip : List.of("1.1.1.1", "2.2.2.2", "3.3.3.3", "4.4.4.4", "5.5.5.5", "6.6.6.6")) {
+            assertTrue(manager.isBlocked(ip), ip);
+        }
+        assertEquals(6, manager.getIpCount());
+        assertTrue(manager.getMetrics().getSourceStats().get(unknown).failed());
+    }
+
+    @Test
+    void reloadAppliesAsnSettingsWhileARefreshRuns() throws IOException {
+        Path database = directory.resolve("ip2asn-v4.tsv");
+        Files.writeString(database, "192.0.2.0\t192.0.2.255\t64500\tZZ\tExample\n");
+        String hanging = serve("/hanging", exchange -> {
+            awaitRelease();
+            respond(exchange, 200, "9.9.9.9\n");
+        });
+
+        TestConfig config = new TestConfig();
+        config.lists = List.of(hanging);
+        config.refreshDeadlineSeconds = 1;
+        manager.requestRefresh(config.build());
+
+        // Only the ASN settings change, so the reload joins the refresh already running.
+        config.asnDatabases = List.of(database.toString());
+        config.blockedAsns = List.of("AS64500");
+        Config reloaded = config.build();
+        CompletableFuture.allOf(manager.reconfigure(reloaded), manager.requestRefresh(reloaded)).join();
+
+        assertTrue(manager.isBlocked("192.0.2.7"));
+        assertFalse(manager.isBlocked("198.51.100.7"));
+    }
+
+    // ------------------------------------------------------------------
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /** Serves {@code path} with {@code handler} and returns its URL. */
+    private String serve(String path, Handler handler) {
+        HttpHandler wrapped = exchange -> {
+            try (exchange) {
+                handler.handle(exchange);
+            }
+        };
+        server.createContext(path, wrapped);
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String encoding, byte[] body) throws IOException {
+        if (encoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] gzip(String text) {
+        return gzip(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(String text, boolean raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+            deflate.write(text.getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private void awaitRelease() {
+        try {
+            released.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
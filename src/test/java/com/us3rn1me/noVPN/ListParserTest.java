@@ -0,0 +1,150 @@
+package com.us3rn1me.noVPN;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ListParserTest {
+
+    @Test
+    void parsesPlainIpv4Forms() throws IOException {
+        LookupIndex.Segment segment = parse("""
+                # comment
+                ; comment
+                1.2.3.4
+                5.6.7.8:8080
+                10.0.0.0/8\r
+                  9.9.9.9\t
+                1.2.3
+                256.1.1.1
+                """);
+        assertEquals(3, segment.ips().size());
+        assertTrue(segment.ips().contains(ipv4("1.2.3.4")));
+        assertTrue(segment.ips().contains(ipv4("5.6.7.8")));
+        assertTrue(segment.ips().contains(ipv4("9.9.9.9")));
+        assertTrue(segment.ranges().contains(ipv4("10.200.0.1")));
+    }
+
+    @Test
+    void parsesBareIpv6Forms() throws IOException {
+        LookupIndex.Segment segment = parse("""
+                2001:db8::1
+                2001:db9::/32
+                2001:dba::1]:25565
+                ::ffff:1.2.3.4
+                """);
+        assertTrue(segment.ranges6().contains(high("2001:db8::")));
+        assertTrue(segment.ranges6().contains(high("2001:db9:ffff::")));
+        assertTrue(segment.ranges6().contains(high("2001:dba::")));
+        assertTrue(segment.ips().contains(ipv4("1.2.3.4")));
+    }
+
+    @Test
+    void parsesBracketedIpv6() throws IOException {
+        LookupIndex.Segment segment = parse("""
+                [2001:db8::1]:25565
+                [2001:db8:0:9::9]
+                [::ffff:5.6.7.8]:1
+                [2001:dbb::]/48
+                [2001:dbc::1
+                [2001:dbd::1]:
+                """);
+        assertTrue(segment.ranges6().contains(high("2001:db8::")));
+        assertTrue(segment.ranges6().contains(high("2001:db8:0:9::")));
+        assertTrue(segment.ips().contains(ipv4("5.6.7.8")));
+        assertTrue(segment.ranges6().contains(high("2001:dbb:0:ffff::")));
+        assertFalse(segment.ranges6().contains(high("2001:dbc::")));
+        assertFalse(segment.ranges6().contains(high("2001:dbd::")));
+    }
+
+    @Test
+    void parsesQuotedAddressesFromJsonLines() throws IOException {
+        LookupIndex.Segment segment = parse("""
+                {"host": "1.2.3.4", "port": 80}
+                ["5.6.7.8", "not an ip"]
+                [ "9.9.9.9" ]
+                "11.11.11.11"
+                {"escaped": "\\"12.12.12.12"}
+                """);
+        assertEquals(4, segment.ips().size());
+        assertTrue(segment.ips().contains(ipv4("1.2.3.4")));
+        assertTrue(segment.ips().contains(ipv4("5.6.7.8")));
+        assertTrue(segment.ips().contains(ipv4("9.9.9.9")));
+        assertTrue(segment.ips().contains(ipv4("11.11.11.11")));
+    }
+
+    @Test
+    void parsesLinesSplitAcrossChunks() throws IOException {
+        String text = "[2001:db8::1]:25565\n1.2.3.4\n";
+        for (int split = 1; split < text.length(); split++) {
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+            LookupIndex.Segment.Builder builder = new LookupIndex.Segment.Builder();
+            ListParser.parse(new OneReadAt(bytes, split), builder);
+            LookupIndex.Segment segment = builder.build(0);
+            assertTrue(segment.ranges6().contains(high("2001:db8::")), "split at " + split);
+            assertTrue(segment.ips().contains(ipv4("1.2.3.4")), "split at " + split);
+        }
+    }
+
+    @Test
+    void parsesByteBuffersLikeStreams() {
+        LookupIndex.Segment.Builder builder = new LookupIndex.Segment.Builder();
+        ListParser.parse(ByteBuffer.wrap("[2001:db8::1]\n1.2.3.4".getBytes(StandardCharsets.US_ASCII)), builder);
+        LookupIndex.Segment segment = builder.build(0);
+        assertTrue(segment.ranges6().contains(high("2001:db8::")));
+        assertTrue(segment.ips().contains(ipv4("1.2.3.4")));
+    }
+
+    private static LookupIndex.Segment parse(String text) throws IOException {
+        LookupIndex.Segment.Builder builder = new LookupIndex.Segment.Builder();
+        ListParser.parse(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)), builder);
+        return builder.build(0);
+    }
+
+    private static int ipv4(String text) {
+        return (int) IpAddresses.parseIpv4(text);
+    }
+
+    private static long high(String text) {
+        long[] packed = new long[2];
+        assertTrue(IpAddresses.parseIpv6(text, 0, text.length(), packed), text);
+        return packed[0];
+    }
+
+    /** Returns the first {@code split} bytes from one read and the rest from the next. */
+    private static final class OneReadAt extends InputStream {
+
+        private final byte[] bytes;
+        private final int split;
+        private int position;
+
+        OneReadAt(byte[] bytes, int split) {
+            this.bytes = bytes;
+            this.split = split;
+        }
+
+        @Override
+        public int read() {
+            return position < bytes.length ? bytes[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position == bytes.length)
+                return -1;
+            int end = position < split ? split : bytes.length;
+            int count = Math.min(length, end - position);
+            System.arraycopy(bytes, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.us3rn1me.noVPN;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LocalSourcesTest {
+
+    @TempDir
+    Path directory;
+
+    private LocalSources sources;
+    private final BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+
+    @AfterEach
+    void tearDown() {
+        if (sources != null) {
+            sources.close();
+        }
+    }
+
+    @Test
+    void streamsLargeFiles() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 2 << 20; i++) {
+            text.append("10.").append(i >> 16 & 255).append('.').append(i >> 8 & 255).append('.').append(i & 255)
+                    .append('\n');
+        }
+        Files.writeString(directory.resolve("large.txt"), text);
+        int lines = (int) text.chars().filter(c -> c == '\n').count();
+
+        sources = new LocalSources(directory, Logger.getLogger("NoVPN"));
+        LocalSources.Loaded loaded = sources.load("file:large.txt", 0);
+        assertEquals(lines, loaded.segment().ips().size());
+        // Nothing keeps the file open or mapped.
+        Files.delete(directory.resolve("large.txt"));
+    }
+
+    @Test
+    void picksUpFilesInADirectoryCreatedLater() throws Exception {
+        String entry = "file:lists";
+        watch(entry);
+
+        Path lists = Files.createDirectory(directory.resolve("lists"));
+        assertEquals(entry, nextChange());
+        drain();
+
+        Files.writeString(lists.resolve("a.txt"), "1.2.3.4\n");
+        assertEquals(entry, nextChange());
+    }
+
+    @Test
+    void followsMissingParentsOfASingleFile() throws Exception {
+        String entry = "file:deep/er/list.txt";
+        watch(entry);
+
+        Path parent = Files.createDirectories(directory.resolve("deep/er"));
+        drain();
+        Files.writeString(parent.resolve("list.txt"), "1.2.3.4\n");
+        assertEquals(entry, nextChange());
+    }
+
+    @Test
+    void reportsOnlyTheWatchedFile() throws Exception {
+        Files.writeString(directory.resolve("list.txt"), "1.2.3.4\n");
+        String entry = "file:list.txt";
+        watch(entry);
+
+        Files.writeString(directory.resolve("other.txt"), "5.6.7.8\n");
+        assertNull(changes.poll(1, TimeUnit.SECONDS), "reported a change to another file");
+        Files.writeString(directory.resolve("list.txt"), "5.6.7.8\n");
+        assertEquals(entry, nextChange());
+    }
+
+    // ------------------------------------------------------------------
+
+    private void watch(String entry) {
+        sources = new LocalSources(directory, Logger.getLogger("NoVPN"));
+        sources.watch(List.of(entry), changes::add);
+    }
+
+    private String nextChange() throws InterruptedException {
+        return changes.poll(5, TimeUnit.SECONDS);
+    }
+
+    /** Waits out the debounce and forgets what was reported so far. */
+    private void drain() throws InterruptedException {
+        Thread.sleep(500);
+        changes.clear();
+    }
+}
@@ -0,0 +1,122 @@
+package com.us3rn1me.noVPN;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.http.HttpClient;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Pins the login-path lookup and allowlist check to zero allocations once
+ * warm, for IPv4, IPv6 and IPv4-mapped IPv6 addresses and with either
+ * snapshot engine.
+ */
+class LookupAllocationTest {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int LOOKUPS = 100_000;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private IpListManager manager;
+    private InetAddress[] addresses;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        LookupIndex.Segment.Builder segment = new LookupIndex.Segment.Builder();
+        segment.addIpv4(0x01020304);
+        segment.addIpv4Range(0x0A000000, 8);
+        long[] prefix = new long[2];
+        assertTrue(IpAddresses.parseIpv6("2001:db8::", 0, "2001:db8::".length(), prefix));
+        segment.addIpv6Range(prefix[0], prefix[1], 32);
+
+        manager = new IpListManager(Logger.getLogger("NoVPN"), HttpClient.newHttpClient(), null);
+        manager.install(LookupIndex.build(List.of("test"), List.of(segment.build(0))));
+
+        byte[] mapped = new byte[16];
+        mapped[10] = (byte) 0xFF;
+        mapped[11] = (byte) 0xFF;
+        mapped[12] = 10;
+        mapped[15] = 7;
+        addresses = new InetAddress[] {
+                InetAddress.getByName("1.2.3.4"),
+                InetAddress.getByName("9.9.9.9"),
+                InetAddress.getByName("2001:db8::1"),
+                InetAddress.getByName("2001:db9::1"),
+                Inet6Address.getByAddress(null, mapped, -1),
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void indexLookupsDoNotAllocate() {
+        manager.reconfigure(new TestConfig().build()).join();
+        assertNoAllocation(manager::isBlocked);
+    }
+
+    @Test
+    void bitmapLookupsDoNotAllocate() {
+        TestConfig config = new TestConfig();
+        config.snapshotEngine = Config.SnapshotEngine.BITMAP;
+        manager.reconfigure(config.build()).join();
+        assertNoAllocation(manager::isBlocked);
+    }
+
+    @Test
+    void allowlistChecksDoNotAllocate() {
+        TestConfig config = new TestConfig();
+        config.allowlist = List.of("1.2.3.4", "10.0.0.0/8", "2001:db8::/32", UUID.randomUUID().toString());
+        Allowlist allowlist = Allowlist.compile(config.build());
+        UUID player = UUID.randomUUID();
+        assertNoAllocation(address -> allowlist.contains(player, address));
+    }
+
+    /** Checks that {@code check} matches 3 of the addresses and allocates nothing once warm. */
+    private void assertNoAllocation(Predicate<InetAddress> check) {
+        assertEquals(3, lookups(check, addresses.length), "matching addresses");
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            lookups(check, LOOKUPS);
+        }
+
+        // A round can still run in the interpreter while the JIT recompiles, so retry a few.
+        long thread = Thread.currentThread().threadId();
+        long allocated = -1;
+        for (int i = 0; i < MEASURED_ROUNDS && allocated != 0; i++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            lookups(check, LOOKUPS);
+            allocated = threads.getThreadAllocatedBytes(thread) - before;
+        }
+        assertEquals(0, allocated, "bytes allocated by " + LOOKUPS + " lookups");
+    }
+
+    private int lookups(Predicate<InetAddress> check, int count) {
+        int matched = 0;
+        for (int i = 0; i < count; i++) {
+            if (check.test(addresses[i % addresses.length])) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,259 @@
+package com.us3rn1me.noVPN;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs reputation lookups against a local stand-in service.
+ */
+class ReputationProviderTest {
+
+    private static final long BREAKER_OPEN_MILLIS = 200;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    // Released on tear-down so handlers that never answer let the server stop
+    private final CountDownLatch released = new CountDownLatch(1);
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+    private final AtomicInteger requests = new AtomicInteger();
+    private ReputationProvider provider;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        provider = new ReputationProvider(Logger.getLogger("NoVPN"), HttpClient.newHttpClient(), null, clock::get,
+                TimeUnit.MILLISECONDS.toNanos(BREAKER_OPEN_MILLIS));
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        provider.shutdown();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    // ------------------------------------------------------------------
+
+    @Test
+    void cachesAnswersUntilTheyExpire() {
+        TestConfig config = config(exchange -> respond(exchange, 200, "{\"proxy\": true}"));
+        config.reputationCacheMinutes = 1;
+
+        assertTrue(check("203.0.113.1", config).join());
+        assertTrue(check("203.0.113.1", config).join());
+        assertEquals(1, requests.get());
+        assertEquals(1, provider.getCacheHits());
+
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        assertTrue(check("203.0.113.1", config).join());
+        assertEquals(2, requests.get());
+        assertEquals(2, provider.getLookups());
+        assertEquals(2, provider.getFlagged());
+    }
+
+    @Test
+    void concurrentChecksShareOneRequest() {
+        TestConfig config = config(exchange -> {
+            awaitRelease();
+            respond(exchange, 200, "{\"proxy\": \"yes\"}");
+        });
+
+        CompletableFuture<Boolean> first = check("203.0.113.2", config);
+        CompletableFuture<Boolean> second = check("203.0.113.2", config);
+        assertSame(first, second);
+        released.countDown();
+
+        assertTrue(first.join());
+        assertEquals(1, requests.get());
+        assertEquals(1, provider.getLookups());
+    }
+
+    @Test
+    void skipsChecksBeyondTheInFlightLimit() {
+        TestConfig config = config(exchange -> {
+            awaitRelease();
+            respond(exchange, 200, "{\"proxy\": true}");
+        });
+        config.reputationMaxInFlight = 2;
+        config.reputationBudgetMillis = 10_000;
+
+        CompletableFuture<Boolean> first = check("203.0.113.3", config);
+        CompletableFuture<Boolean> second = check("203.0.113.4", config);
+        CompletableFuture<Boolean> third = check("203.0.113.5", config);
+
+        assertTrue(third.isDone());
+        assertFalse(third.join());
+        assertEquals(1, provider.getSkipped());
+        released.countDown();
+        assertTrue(first.join());
+        assertTrue(second.join());
+        assertEquals(2, provider.getLookups());
+    }
+
+    @Test
+    void letsThePlayerInWhenTheServiceIsTooSlow() {
+        TestConfig config = config(exchange -> {
+            awaitRelease();
+            respond(exchange, 200, "{\"proxy\": true}");
+        });
+        config.reputationBudgetMillis = 200;
+
+        long begin = System.nanoTime();
+        assertFalse(check("203.0.113.6", config).join());
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        assertTrue(elapsedMs < 2000, "check took " + elapsedMs + " ms");
+        assertEquals(1, provider.getFailures());
+        assertFalse(provider.isBreakerOpen());
+        // A failed lookup is not cached.
+        assertEquals(0, provider.getCacheHits());
+    }
+
+    @Test
+    void breakerOpensThenProbesThenCloses() {
+        AtomicBoolean healthy = new AtomicBoolean();
+        TestConfig config = config(exchange -> {
+            if (healthy.get()) {
+                respond(exchange, 200, "{\"proxy\": false}");
+            } else {
+                respond(exchange, 503, "unavailable");
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            assertFalse(check("198.51.100." + i, config).join());
+        }
+        assertTrue(provider.isBreakerOpen());
+        assertEquals(5, requests.get());
+
+        // Open: nothing is sent.
+        assertFalse(check("198.51.100.10", config).join());
+        assertEquals(5, requests.get());
+        assertEquals(1, provider.getSkipped());
+
+        // Half-open: a single trial goes out; it fails, so the breaker stays open.
+        sleep(BREAKER_OPEN_MILLIS + 100);
+        assertFalse(check("198.51.100.11", config).join());
+        assertEquals(6, requests.get());
+        assertTrue(provider.isBreakerOpen());
+        assertFalse(check("198.51.100.12", config).join());
+        assertEquals(6, requests.get());
+
+        // The next trial succeeds and closes it.
+        healthy.set(true);
+        sleep(BREAKER_OPEN_MILLIS + 100);
+        assertFalse(check("198.51.100.13", config).join());
+        assertFalse(provider.isBreakerOpen());
+        assertFalse(check("198.51.100.14", config).join());
+        assertEquals(8, requests.get());
+        assertEquals(6, provider.getFailures());
+    }
+
+    @Test
+    void unbuildableLookupDoesNotTakeTheTrial() throws IOException {
+        AtomicBoolean healthy = new AtomicBoolean();
+        TestConfig config = config(exchange -> {
+            if (healthy.get()) {
+                respond(exchange, 200, "{\"proxy\": false}");
+            } else {
+                respond(exchange, 503, "unavailable");
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            assertFalse(check("198.51.100." + i, config).join());
+        }
+        assertTrue(provider.isBreakerOpen());
+        sleep(BREAKER_OPEN_MILLIS + 100);
+
+        // The scope id turns into a malformed escape in the query, so no request can be built.
+        InetAddress scoped = Inet6Address.getByAddress(null, InetAddress.getByName("2001:db8::1").getAddress(), 1);
+        assertFalse(provider.check(scoped, config.build()).join());
+        assertEquals(5, requests.get());
+        assertEquals(1, provider.getSkipped());
+
+        healthy.set(true);
+        assertFalse(check("198.51.100.20", config).join());
+        assertEquals(6, requests.get());
+        assertFalse(provider.isBreakerOpen());
+    }
+
+    // ------------------------------------------------------------------
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /** Serves the reputation service with {@code handler} and returns a config pointing at it. */
+    private TestConfig config(Handler handler) {
+        server.createContext("/reputation", exchange -> {
+            try (exchange) {
+                requests.incrementAndGet();
+                handler.handle(exchange);
+            }
+        });
+        TestConfig config = new TestConfig();
+        config.reputationUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/reputation?ip={ip}";
+        return config;
+    }
+
+    private CompletableFuture<Boolean> check(String ip, TestConfig config) {
+        try {
+            return provider.check(InetAddress.getByName(ip), config.build());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void awaitRelease() {
+        try {
+            released.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
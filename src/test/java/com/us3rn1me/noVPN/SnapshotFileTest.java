@@ -0,0 +1,102 @@
+package com.us3rn1me.noVPN;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsThroughThePointer() throws IOException {
+        Path pointer = directory.resolve("snapshot.current");
+        SnapshotFile.write(index("1.2.3.4", "10.0.0.0/8"), pointer);
+
+        LookupIndex read = SnapshotFile.read(pointer);
+        assertTrue(read.isMapped());
+        assertEquals(List.of("test"), read.sources());
+        assertNotEquals(LookupIndex.NO_MATCH, read.match((int) IpAddresses.parseIpv4("1.2.3.4")));
+        assertNotEquals(LookupIndex.NO_MATCH, read.match((int) IpAddresses.parseIpv4("10.9.8.7")));
+        assertEquals(LookupIndex.NO_MATCH, read.match((int) IpAddresses.parseIpv4("9.9.9.9")));
+    }
+
+    @Test
+    void writesEachGenerationToANewFile() throws IOException {
+        Path pointer = directory.resolve("snapshot.current");
+        SnapshotFile.write(index("1.1.1.1"), pointer);
+        Path first = SnapshotFile.resolve(pointer);
+        LookupIndex mapped = SnapshotFile.read(pointer);
+
+        SnapshotFile.write(index("2.2.2.2"), pointer);
+        Path second = SnapshotFile.resolve(pointer);
+
+        assertNotEquals(first, second);
+        assertTrue(second.getFileName().toString().matches("snapshot-\\d+\\.bin"));
+        assertEquals(List.of(second), generations());
+        // The replaced generation stays readable through its existing mapping.
+        assertNotEquals(LookupIndex.NO_MATCH, mapped.match((int) IpAddresses.parseIpv4("1.1.1.1")));
+        assertNotEquals(LookupIndex.NO_MATCH,
+                SnapshotFile.read(pointer).match((int) IpAddresses.parseIpv4("2.2.2.2")));
+    }
+
+    @Test
+    void rejectsMalformedPointers() throws IOException {
+        Path pointer = directory.resolve("snapshot.current");
+        Files.writeString(pointer, "../elsewhere.bin");
+        assertThrows(IOException.class, () -> SnapshotFile.read(pointer));
+        Files.writeString(pointer, "snapshot-1.bin");
+        assertThrows(IOException.class, () -> SnapshotFile.read(pointer));
+    }
+
+    @Test
+    void followerSeesEveryGeneration() throws IOException {
+        Path pointer = directory.resolve("snapshot.current");
+        List<LookupIndex> adopted = new ArrayList<>();
+        SnapshotFollower follower = new SnapshotFollower(pointer, Logger.getLogger("NoVPN"), adopted::add);
+
+        assertFalse(follower.check());
+        SnapshotFile.write(index("1.1.1.1"), pointer);
+        assertTrue(follower.check());
+        assertFalse(follower.check());
+        SnapshotFile.write(index("2.2.2.2"), pointer);
+        assertTrue(follower.check());
+
+        assertEquals(2, adopted.size());
+        assertNotEquals(LookupIndex.NO_MATCH, adopted.get(1).match((int) IpAddresses.parseIpv4("2.2.2.2")));
+    }
+
+    private List<Path> generations() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".bin")).toList();
+        }
+    }
+
+    private static LookupIndex index(String... entries) {
+        LookupIndex.Segment.Builder segment = new LookupIndex.Segment.Builder();
+        for (String entry : entries) {
+            int slash = entry.indexOf('/');
+            if (slash < 0) {
+                segment.addIpv4((int) IpAddresses.parseIpv4(entry));
+            } else {
+                segment.addIpv4Range((int) IpAddresses.parseIpv4(entry, 0, slash),
+                        Integer.parseInt(entry.substring(slash + 1)));
+            }
+        }
+        return LookupIndex.build(List.of("test"), List.of(segment.build(0)));
+    }
+}
@@ -0,0 +1,40 @@
+package com.us3rn1me.noVPN;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link Config} for tests: everything defaults to a quiet
+ * standalone setup, and tests override only what they exercise.
+ */
+final class TestConfig {
+
+    String bypassPermission = "novpn.bypass";
+    int bypassCacheSeconds = 0;
+    List<String> allowlist = List.of();
+    List<String> lists = List.of();
+    int connectTimeoutSeconds = 5;
+    int maxConcurrentDownloads = 8;
+    int refreshDeadlineSeconds = 30;
+    int minMatchingSources = 1;
+    Config.SnapshotEngine snapshotEngine = Config.SnapshotEngine.INDEX;
+    String reputationUrl = "";
+    String reputationPattern = "\"proxy\"\\s*:\\s*(true|\"yes\")";
+    int reputationBudgetMillis = 1000;
+    int reputationMaxInFlight = 8;
+    int reputationCacheMinutes = 1440;
+    int reputationCacheSize = 50000;
+    List<String> asnDatabases = List.of();
+    List<String> blockedAsns = List.of();
+    List<String> blockedCountries = List.of();
+    String verdictSecret = "";
+
+    Config build() {
+        return new Config("", bypassPermission, false, 0, connectTimeoutSeconds, maxConcurrentDownloads,
+                refreshDeadlineSeconds, lists, minMatchingSources, Config.StartupPolicy.ALLOW, 0, "", Map.of(),
+                "127.0.0.1", 0, snapshotEngine, false, allowlist, bypassCacheSeconds,
+                Config.SnapshotMode.STANDALONE, "", false, false, 0, reputationUrl, reputationPattern, reputationBudgetMillis,
+                reputationMaxInFlight, reputationCacheMinutes, reputationCacheSize,
+                asnDatabases, blockedAsns, blockedCountries, verdictSecret);
+    }
+}
@@ -0,0 +1,59 @@
+package com.us3rn1me.noVPN;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class VerdictTest {
+
+    private static final String SECRET = "correct horse battery staple";
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final Verdict verdict = new Verdict(UUID.randomUUID(), true, 42, NOW);
+
+    @Test
+    void roundTripsWithTheSameSecret() {
+        assertEquals(verdict, Verdict.decode(verdict.encode(SECRET), SECRET, NOW + 1_000));
+    }
+
+    @Test
+    void rejectsAnotherSecret() {
+        assertNull(Verdict.decode(verdict.encode(SECRET), "another secret", NOW));
+    }
+
+    @Test
+    void rejectsEverythingWithoutASecret() {
+        assertNull(Verdict.decode(verdict.encode(SECRET), "", NOW));
+    }
+
+    @Test
+    void rejectsTamperedMessages() {
+        byte[] message = verdict.encode(SECRET);
+        for (int i = 0; i < message.length; i++) {
+            byte[] tampered = message.clone();
+            tampered[i] ^= 1;
+            assertNull(Verdict.decode(tampered, SECRET, NOW), "flipped byte " + i);
+        }
+    }
+
+    @Test
+    void rejectsStaleAndFutureVerdicts() {
+        byte[] message = verdict.encode(SECRET);
+        assertEquals(verdict, Verdict.decode(message, SECRET, NOW + Verdict.MAX_AGE_MILLIS));
+        assertNull(Verdict.decode(message, SECRET, NOW + Verdict.MAX_AGE_MILLIS + 1));
+        assertNull(Verdict.decode(message, SECRET, NOW - Verdict.MAX_AGE_MILLIS - 1));
+    }
+
+    @Test
+    void rejectsMalformedMessages() {
+        byte[] message = verdict.encode(SECRET);
+        assertNull(Verdict.decode(new byte[0], SECRET, NOW));
+        assertNull(Verdict.decode(Arrays.copyOf(message, message.length - 1), SECRET, NOW));
+        // The unsigned version 1 format is no longer accepted.
+        assertNull(Verdict.decode(new byte[26], SECRET, NOW));
+    }
+}